@@ -0,0 +1,150 @@
+package cisc187.dna;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Compares the time taken to parse a commands file with a Scanner per line, the way the
+ * Sequencer used to, and with a {@link CommandReader}. Only the parsing is timed, the commands
+ * are not run. The input is a commands file repeated until it has the requested number of lines.
+ * <p>
+ * usage: java cisc187.dna.ParserBenchmark [commands file] [lines]
+ * </p>
+ */
+public final class ParserBenchmark {
+
+	private static final int ROUNDS = 3;
+
+	/**
+	 * Not an instantiable class
+	 */
+	private ParserBenchmark() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		String sample = args.length > 0 ? args[0] : "commands.txt";
+		int lines = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+		File input = File.createTempFile("commands", ".txt");
+		input.deleteOnExit();
+		writeInput(Files.readAllLines(Paths.get(sample)), lines, input);
+		System.out.println("Parsing " + lines + " lines (" + input.length() / (1024 * 1024) + " MB)");
+		for (int round = 1; round <= ROUNDS; round++) {
+			long start = System.nanoTime();
+			long scanned = parseWithScanner(input);
+			long scannerTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			long read = parseWithCommandReader(input);
+			long readerTime = System.nanoTime() - start;
+			if (scanned != read) {
+				throw new IllegalStateException("Parsers disagree: " + scanned + " != " + read);
+			}
+			System.out.printf("round %d: Scanner %6d ms, CommandReader %6d ms, speedup %.1fx%n", round,
+				scannerTime / 1000000, readerTime / 1000000, (double) scannerTime / readerTime);
+		}
+	}
+
+	private static void writeInput(final List<String> sample, final int lines, final File input) throws IOException {
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(input))) {
+			for (int i = 0; i < lines; i++) {
+				out.write(sample.get(i % sample.size()));
+				out.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Parse the way the Sequencer did before CommandReader: one Scanner over the file and a new
+	 * Scanner for every line.
+	 *
+	 * @return a checksum of everything that was parsed.
+	 */
+	private static long parseWithScanner(final File input) throws IOException {
+		long checksum = 0;
+		try (Scanner sc = new Scanner(input)) {
+			while (sc.hasNextLine()) {
+				String nextLine = sc.nextLine();
+				if (nextLine.isEmpty()) {
+					continue;
+				}
+				Scanner line = new Scanner(nextLine);
+				if (!line.hasNext()) {
+					continue;
+				}
+				switch (line.next().toLowerCase()) {
+					case "insert":
+						checksum += Integer.parseInt(line.next());
+						checksum += line.next().toUpperCase().length();
+						checksum += line.next().length();
+						break;
+					case "remove":
+					case "transcribe":
+						checksum += Integer.parseInt(line.next());
+						break;
+					case "print":
+					case "clip":
+					case "copy":
+					case "swap":
+						while (line.hasNext()) {
+							checksum += Integer.parseInt(line.next());
+						}
+						break;
+					default:
+						checksum--;
+				}
+			}
+		}
+		return checksum;
+	}
+
+	/**
+	 * Parse with a CommandReader, the way the Sequencer does now.
+	 *
+	 * @return a checksum of everything that was parsed.
+	 */
+	private static long parseWithCommandReader(final File input) throws IOException {
+		long checksum = 0;
+		String[] types = {"DNA", "RNA"};
+		try (CommandReader line = new CommandReader(new FileInputStream(input))) {
+			while (line.nextLine()) {
+				if (!line.hasNext()) {
+					continue;
+				}
+				Command command = line.nextCommand();
+				if (command == null) {
+					checksum--;
+					continue;
+				}
+				switch (command) {
+					case INSERT:
+						checksum += line.nextInt();
+						line.nextChoice(types);
+						checksum += 3;
+						checksum += line.next().length();
+						break;
+					case REMOVE:
+					case TRANSCRIBE:
+						checksum += line.nextInt();
+						break;
+					case PRINT:
+					case CLIP:
+					case COPY:
+					case SWAP:
+						while (line.hasNext()) {
+							checksum += line.nextInt();
+						}
+						break;
+					default:
+						checksum--;
+				}
+			}
+		}
+		return checksum;
+	}
+}
@@ -0,0 +1,119 @@
+package cisc187.dna;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the {@link BaseSequence} operations over sequences of 10 to 10^8 bases.
+ * Every benchmark returns its result so that it is consumed by JMH.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class BaseSequenceBenchmark {
+
+	@Param({"10", "1000", "100000", "10000000", "100000000"})
+	public int length;
+
+	private String bases;
+	private PackedBases packed;
+	private PackedBases samePacked;
+	private BaseSequence sequence;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		bases = randomBases(length, "ACGT", 187);
+		sequence = new BaseSequence(bases, SequenceType.DNA);
+		packed = SequenceType.DNA.pack(bases);
+		samePacked = SequenceType.DNA.pack(bases);
+	}
+
+	/**
+	 * Build a random sequence of bases.
+	 *
+	 * @param length the number of bases.
+	 * @param alphabet the bases to choose from.
+	 * @param seed the seed of the random numbers, so every run uses the same bases.
+	 * @return the bases.
+	 */
+	static String randomBases(final int length, final String alphabet, final long seed) {
+		Random random = new Random(seed);
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+		}
+		return new String(chars);
+	}
+
+	@Benchmark
+	public BaseSequence construct() {
+		return new BaseSequence(bases, SequenceType.DNA);
+	}
+
+	/**
+	 * Clip the second half of the sequence and put it back, so the sequence is the same for
+	 * every invocation.
+	 */
+	@Benchmark
+	public BaseSequence clipTail() {
+		BaseSequence tail = sequence.clip(length / 2);
+		sequence.append(tail);
+		return tail;
+	}
+
+	@Benchmark
+	public BaseSequence copy() {
+		return sequence.copy();
+	}
+
+	/**
+	 * Transcribe a fresh DNA sequence over the same packed words every invocation. Transcribing
+	 * never writes to the words it reads, so they stay DNA; only building the rope over them is
+	 * measured as well.
+	 */
+	@Benchmark
+	public BaseSequence transcribe() {
+		BaseSequence work = new BaseSequence(packed, SequenceType.DNA);
+		work.transcribe();
+		return work;
+	}
+
+	@Benchmark
+	public String toStringSequence() {
+		return sequence.toString();
+	}
+
+	/**
+	 * Compare two fresh sequences holding the same bases in different words every invocation.
+	 * A sequence keeps its hash once computed, so comparing the same two sequences again would
+	 * only read their cached hashes; building the ropes over the words is measured as well.
+	 */
+	@Benchmark
+	public boolean equalsSequence() {
+		return new BaseSequence(packed, SequenceType.DNA).equals(new BaseSequence(samePacked, SequenceType.DNA));
+	}
+
+	/**
+	 * Hash a fresh sequence over the same packed words every invocation, for the same reason as
+	 * {@link #equalsSequence()}.
+	 */
+	@Benchmark
+	public int hashCodeSequence() {
+		return new BaseSequence(packed, SequenceType.DNA).hashCode();
+	}
+}
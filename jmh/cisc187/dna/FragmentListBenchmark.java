@@ -0,0 +1,58 @@
+package cisc187.dna;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the {@link FragmentList} insert and swap operations over sequences of 10 to
+ * 10^8 bases.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class FragmentListBenchmark {
+
+	@Param({"10", "1000", "100000", "10000000", "100000000"})
+	public int length;
+
+	private String bases;
+	private FragmentList frags;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		bases = BaseSequenceBenchmark.randomBases(length, "ACGT", 5338747);
+		frags = new FragmentList(3);
+		frags.insert(0, SequenceType.DNA, BaseSequenceBenchmark.randomBases(length, "ACGT", 1));
+		frags.insert(1, SequenceType.DNA, BaseSequenceBenchmark.randomBases(length, "ACGT", 2));
+	}
+
+	@Benchmark
+	public FragmentList insert() {
+		frags.insert(2, SequenceType.DNA, bases);
+		return frags;
+	}
+
+	/**
+	 * Swap the second halves of two sequences of the same length, which leaves both lengths
+	 * unchanged for the next invocation.
+	 */
+	@Benchmark
+	public FragmentList swap() {
+		frags.swap(0, length / 2, 1, length / 2);
+		return frags;
+	}
+}
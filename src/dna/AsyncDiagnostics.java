@@ -0,0 +1,152 @@
+package cisc187.dna;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+
+/**
+ * A diagnostics sink writing messages on a thread of its own, in batches.
+ * <p>
+ * A report only copies the status and its values into a ring of preallocated slots, so
+ * rejecting a change allocates nothing and never waits for output, unless the ring is full,
+ * which makes the reporting thread wait for the writer. The writer takes every report queued
+ * since its last batch, builds their messages in a single buffer and writes them with a single
+ * call.
+ * </p>
+ * <p>
+ * Messages come out in the order they were reported, but not in order with the output of the
+ * commands, which is why this sink is best given a stream of its own, such as System.err.
+ * </p>
+ */
+final class AsyncDiagnostics implements Diagnostics.Sink, Closeable {
+
+	/**
+	 * The number of reports queued before reporting threads wait, if no other is given.
+	 */
+	static final int DEFAULT_CAPACITY = 1 << 14;
+
+	private final PrintStream out;
+	private final int capacity;
+	private final Status[] statuses;
+	private final String[] subjects;
+	private final long[] values;
+	/**
+	 * The number of reports written, and of reports queued, since the start. Guarded by this.
+	 */
+	private long head;
+	private long tail;
+	private boolean closed;
+	private final Thread writer;
+
+	/**
+	 * Create a sink and start its writer.
+	 *
+	 * @param out the stream to write the messages to.
+	 * @param capacity the number of reports queued before reporting threads wait.
+	 */
+	AsyncDiagnostics(final PrintStream out, final int capacity) {
+		this.out = out;
+		this.capacity = capacity;
+		statuses = new Status[capacity];
+		subjects = new String[capacity];
+		values = new long[3 * capacity];
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}, "diagnostics");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public synchronized void report(final Status status, final String subject, final long a, final long b, final long c) {
+		while (tail - head == capacity && !closed) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		if (closed) {
+			Diagnostics.CONSOLE.report(status, subject, a, b, c);
+			return;
+		}
+		int slot = (int) (tail % capacity);
+		statuses[slot] = status;
+		subjects[slot] = subject;
+		values[3 * slot] = a;
+		values[3 * slot + 1] = b;
+		values[3 * slot + 2] = c;
+		if (tail++ == head) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Wait until every report queued so far is written.
+	 */
+	@Override
+	public synchronized void flush() {
+		long target = tail;
+		while (head < target) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Write every queued report and stop the writer. Later reports are written at once.
+	 */
+	@Override
+	public void close() {
+		flush();
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Write batches of reports until the sink is closed.
+	 */
+	private void drain() {
+		StringBuilder text = new StringBuilder();
+		while (true) {
+			long from;
+			long to;
+			synchronized (this) {
+				while (head == tail && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (head == tail) {
+					return;
+				}
+				from = head;
+				to = tail;
+			}
+			// the slots of the batch are not reused until head passes them.
+			for (long i = from; i < to; i++) {
+				int slot = (int) (i % capacity);
+				statuses[slot].format(text, subjects[slot], values[3 * slot], values[3 * slot + 1], values[3 * slot + 2]);
+				subjects[slot] = null;
+			}
+			out.print(text);
+			out.flush();
+			text.setLength(0);
+			synchronized (this) {
+				head = to;
+				notifyAll();
+			}
+		}
+	}
+}
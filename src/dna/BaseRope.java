@@ -0,0 +1,720 @@
+package cisc187.dna;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An immutable rope of packed bases. The bases live in leaves that point at a range of packed
+ * words, and the leaves are joined by concatenation nodes kept balanced like an AVL tree, so the
+ * height of a rope is logarithmic in the number of leaves.
+ * <p>
+ * Clipping and swapping tails are done by splitting and joining ropes. Splitting a leaf only
+ * creates two smaller views of the same words, and joining two ropes only creates the nodes along
+ * one edge of the taller rope, so no base is ever copied and both take logarithmic time. Because
+ * nothing is changed in place, a rope can be shared between any number of BaseSequences.
+ * </p>
+ * <p>
+ * Leaves are either packed words on the heap or a range of base characters in a buffer, which
+ * is how a memory mapped file is read without copying it. Edits of a mapped rope only build new
+ * nodes over ranges of the buffer, so the file itself is never written.
+ * </p>
+ * <p>
+ * Every rope has a polynomial hash of its codes, {@code sum(code[i] * B^(n-1-i))} modulo
+ * 2<sup>64</sup>. The hash of a concatenation is {@code hash(left) * B^length(right) +
+ * hash(right)}, so a node hashes its two children in constant time. Hashes are computed when
+ * first asked for and kept in the node, and since nodes are shared by the ropes split and joined
+ * from them, hashing an edited rope only reads the bases of the few leaves the edit cut.
+ * </p>
+ */
+abstract class BaseRope {
+
+	/**
+	 * The maximum number of bases in a leaf built from packed storage.
+	 */
+	static final int LEAF_SIZE = 1024;
+	/**
+	 * The maximum number of bases in a leaf over a buffer of base characters.
+	 */
+	static final int MAPPED_LEAF_SIZE = 16 * LEAF_SIZE;
+	/**
+	 * The rope holding no bases.
+	 */
+	static final BaseRope EMPTY = new Leaf(new long[0], 0, 0);
+	/**
+	 * The base of the polynomial hash, odd so its powers never become zero.
+	 */
+	static final long HASH_BASE = 0x9E3779B97F4A7C15L;
+
+	private long hash;
+	/**
+	 * {@link #HASH_BASE} to the power of the length of this rope.
+	 */
+	private long power;
+	/**
+	 * Set once hash and power hold their values, which makes them visible to every thread.
+	 */
+	private volatile boolean hashed;
+
+	/**
+	 * Get the number of bases in this rope.
+	 *
+	 * @return the number of bases.
+	 */
+	abstract int length();
+
+	/**
+	 * Get the height of this rope, a leaf has height 0.
+	 *
+	 * @return the height of this rope.
+	 */
+	abstract int height();
+
+	/**
+	 * Get the 2 bit code of the base at a position.
+	 *
+	 * @param i the position of the base.
+	 * @return the code of the base.
+	 */
+	abstract int code(int i);
+
+	/**
+	 * Split this rope in two at a position.
+	 *
+	 * @param i the position of the first base of the second rope.
+	 * @return the ropes holding the bases before i and from i on.
+	 */
+	abstract BaseRope[] split(int i);
+
+	/**
+	 * Add every base of this rope to the end of packed storage.
+	 *
+	 * @param dest the storage to add the bases to.
+	 */
+	abstract void appendTo(PackedBases dest);
+
+	/**
+	 * Turn a run of bases into characters.
+	 *
+	 * @param from the position of the first base.
+	 * @param count the number of bases.
+	 * @param dest the array to write the characters to.
+	 * @param destPos the position in dest of the first character.
+	 * @param alphabet the character of every code.
+	 */
+	abstract void decode(int from, int count, char[] dest, int destPos, char[] alphabet);
+
+	/**
+	 * Get a run of at most {@link PackedBases#BASES_PER_WORD} bases packed in a word, the first
+	 * base in the lowest bits and the bits above the last base clear.
+	 *
+	 * @param from the position of the first base.
+	 * @param count the number of bases, 1 to 32.
+	 * @return the packed bases.
+	 */
+	abstract long word(int from, int count);
+
+	/**
+	 * Get the polynomial hash of the bases of this rope.
+	 *
+	 * @return the hash, equal for ropes holding the same bases.
+	 */
+	final long hash() {
+		if (!hashed) {
+			computeHash();
+		}
+		return hash;
+	}
+
+	/**
+	 * Get {@link #HASH_BASE} to the power of the length of this rope, the factor its hash is
+	 * multiplied by when bases are added before it.
+	 *
+	 * @return the power.
+	 */
+	final long power() {
+		if (!hashed) {
+			computeHash();
+		}
+		return power;
+	}
+
+	/**
+	 * Compute the hash and the power of this rope.
+	 */
+	abstract void computeHash();
+
+	/**
+	 * Keep the hash and the power of this rope.
+	 */
+	final void setHash(final long hash, final long power) {
+		this.hash = hash;
+		this.power = power;
+		this.hashed = true;
+	}
+
+	/**
+	 * Raise {@link #HASH_BASE} to a power by repeated squaring.
+	 */
+	static long powerOf(final int exponent) {
+		long result = 1;
+		long square = HASH_BASE;
+		for (int e = exponent; e != 0; e >>>= 1) {
+			if ((e & 1) != 0) {
+				result *= square;
+			}
+			square *= square;
+		}
+		return result;
+	}
+
+	/**
+	 * Get the bases from positions start to end (exclusive) as a rope sharing this one's leaves.
+	 *
+	 * @param start the first position.
+	 * @param end the position after the last one.
+	 * @return the bases between start and end.
+	 */
+	BaseRope sub(final int start, final int end) {
+		BaseRope tail = start == 0 ? this : split(start)[1];
+		return end - start == tail.length() ? tail : tail.split(end - start)[0];
+	}
+
+	/**
+	 * Check if two ropes hold the same bases. The leaves of both are walked side by side and
+	 * compared a word at a time where they are, nothing is copied, and leaves shared by both
+	 * ropes are skipped whole.
+	 *
+	 * @param a a rope.
+	 * @param b another rope.
+	 * @return true if both hold the same bases in the same order.
+	 */
+	static boolean sameBases(final BaseRope a, final BaseRope b) {
+		if (a == b) {
+			return true;
+		}
+		if (a.length() != b.length() || a.hashed && b.hashed && a.hash != b.hash) {
+			return false;
+		}
+		return commonPrefix(a, b) == a.length();
+	}
+
+	/**
+	 * Get the number of bases two ropes start with in common, comparing them in place as
+	 * {@link #sameBases(BaseRope, BaseRope)} does.
+	 *
+	 * @param a a rope.
+	 * @param b another rope.
+	 * @return the length of the longest run of bases both start with.
+	 */
+	static int commonPrefix(final BaseRope a, final BaseRope b) {
+		int length = Math.min(a.length(), b.length());
+		if (a == b || length == 0) {
+			return length;
+		}
+		Leaves x = new Leaves(a);
+		Leaves y = new Leaves(b);
+		int done = 0;
+		while (done < length) {
+			int count;
+			if (x.leaf == y.leaf && x.pos == y.pos) {
+				count = x.leaf.length() - x.pos;
+			} else {
+				count = Math.min(PackedBases.BASES_PER_WORD, Math.min(x.leaf.length() - x.pos, y.leaf.length() - y.pos));
+				long diff = x.leaf.word(x.pos, count) ^ y.leaf.word(y.pos, count);
+				if (diff != 0) {
+					// the first base is in the lowest bits.
+					return done + (Long.numberOfTrailingZeros(diff) >>> 1);
+				}
+			}
+			x.skip(count);
+			y.skip(count);
+			done += count;
+		}
+		return length;
+	}
+
+	/**
+	 * Get the number of bases two ropes end with in common, up to a limit, comparing them in
+	 * place from their last leaves back as {@link #commonPrefix(BaseRope, BaseRope)} does from
+	 * their first ones.
+	 *
+	 * @param a a rope.
+	 * @param b another rope.
+	 * @param max the most bases to compare, at most the length of either rope.
+	 * @return the length of the longest run of bases both end with, at most max.
+	 */
+	static int commonSuffix(final BaseRope a, final BaseRope b, final int max) {
+		if (a == b || max == 0) {
+			return max;
+		}
+		Leaves x = new Leaves(a, true);
+		Leaves y = new Leaves(b, true);
+		int done = 0;
+		while (done < max) {
+			int count;
+			if (x.leaf == y.leaf && x.pos == y.pos) {
+				count = Math.min(x.leaf.length() - x.pos, max - done);
+			} else {
+				count = Math.min(Math.min(PackedBases.BASES_PER_WORD, max - done), Math.min(x.leaf.length() - x.pos, y.leaf.length() - y.pos));
+				long diff = x.leaf.word(x.leaf.length() - x.pos - count, count) ^ y.leaf.word(y.leaf.length() - y.pos - count, count);
+				if (diff != 0) {
+					// the last base is in the highest bits once the word is shifted to the top.
+					return done + (Long.numberOfLeadingZeros(diff << (64 - 2 * count)) >>> 1);
+				}
+			}
+			x.skip(count);
+			y.skip(count);
+			done += count;
+		}
+		return max;
+	}
+
+	/**
+	 * Copy every base into a single packed storage.
+	 *
+	 * @return the bases of this rope.
+	 */
+	PackedBases toPacked() {
+		PackedBases packed = new PackedBases(length());
+		appendTo(packed);
+		return packed;
+	}
+
+	/**
+	 * Build a balanced rope over packed storage. The storage is cut into leaves of at most
+	 * {@link #LEAF_SIZE} bases that all share its words, so it must not be changed afterwards.
+	 *
+	 * @param bases the packed bases.
+	 * @return the rope holding the bases.
+	 */
+	static BaseRope of(final PackedBases bases) {
+		if (bases.length() == 0) {
+			return EMPTY;
+		}
+		return build(bases.words(), 0, (bases.length() + LEAF_SIZE - 1) / LEAF_SIZE, bases.length());
+	}
+
+	private static BaseRope build(final long[] words, final int firstLeaf, final int leaves, final int length) {
+		if (leaves == 1) {
+			int offset = firstLeaf * LEAF_SIZE;
+			return new Leaf(words, offset, Math.min(LEAF_SIZE, length - offset));
+		}
+		int half = leaves / 2;
+		return new Concat(build(words, firstLeaf, half, length), build(words, firstLeaf + half, leaves - half, length));
+	}
+
+	/**
+	 * Build a balanced rope over a buffer of base characters, one byte per base. The bytes are
+	 * read in place whenever a base is needed, so they must all be valid bases and must not be
+	 * changed afterwards.
+	 *
+	 * @param bytes the buffer holding the base characters.
+	 * @param offset the position of the first base in the buffer.
+	 * @param length the number of bases.
+	 * @return the rope holding the bases.
+	 */
+	static BaseRope of(final ByteBuffer bytes, final int offset, final int length) {
+		if (length == 0) {
+			return EMPTY;
+		}
+		int leaves = (length + MAPPED_LEAF_SIZE - 1) / MAPPED_LEAF_SIZE;
+		BaseRope rope = EMPTY;
+		for (int i = 0; i < leaves; i++) {
+			int start = i * MAPPED_LEAF_SIZE;
+			rope = concat(rope, new ByteLeaf(bytes, offset + start, Math.min(MAPPED_LEAF_SIZE, length - start)));
+		}
+		return rope;
+	}
+
+	/**
+	 * Join two ropes. Only the nodes on the edge of the taller rope where the shorter one is
+	 * attached are rebuilt, so the cost is the difference of their heights.
+	 *
+	 * @param left the rope holding the first bases.
+	 * @param right the rope holding the last bases.
+	 * @return the rope holding the bases of left followed by the bases of right.
+	 */
+	static BaseRope concat(final BaseRope left, final BaseRope right) {
+		if (left.length() == 0) {
+			return right;
+		}
+		if (right.length() == 0) {
+			return left;
+		}
+		if (left.height() > right.height() + 1) {
+			Concat l = (Concat) left;
+			return balance(l.left, concat(l.right, right));
+		}
+		if (right.height() > left.height() + 1) {
+			Concat r = (Concat) right;
+			return balance(concat(left, r.left), r.right);
+		}
+		return new Concat(left, right);
+	}
+
+	/**
+	 * Join two ropes whose heights differ by at most two, rotating once or twice if they differ
+	 * by two.
+	 */
+	private static BaseRope balance(final BaseRope left, final BaseRope right) {
+		if (left.height() > right.height() + 1) {
+			Concat l = (Concat) left;
+			if (l.left.height() >= l.right.height()) {
+				return new Concat(l.left, new Concat(l.right, right));
+			}
+			Concat lr = (Concat) l.right;
+			return new Concat(new Concat(l.left, lr.left), new Concat(lr.right, right));
+		}
+		if (right.height() > left.height() + 1) {
+			Concat r = (Concat) right;
+			if (r.right.height() >= r.left.height()) {
+				return new Concat(new Concat(left, r.left), r.right);
+			}
+			Concat rl = (Concat) r.left;
+			return new Concat(new Concat(left, rl.left), new Concat(rl.right, r.right));
+		}
+		return new Concat(left, right);
+	}
+
+	/**
+	 * A run of bases stored in a range of packed words.
+	 */
+	static final class Leaf extends BaseRope {
+
+		private final long[] words;
+		private final int offset;
+		private final int length;
+
+		/**
+		 * Create a leaf over a range of packed words.
+		 *
+		 * @param words the packed words, never changed afterwards.
+		 * @param offset the position of the first base in the words.
+		 * @param length the number of bases.
+		 */
+		Leaf(final long[] words, final int offset, final int length) {
+			this.words = words;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		int length() {
+			return length;
+		}
+
+		@Override
+		int height() {
+			return 0;
+		}
+
+		@Override
+		int code(final int i) {
+			return PackedBases.code(words, offset + i);
+		}
+
+		@Override
+		BaseRope[] split(final int i) {
+			if (i == 0) {
+				return new BaseRope[] {EMPTY, this};
+			}
+			if (i == length) {
+				return new BaseRope[] {this, EMPTY};
+			}
+			return new BaseRope[] {new Leaf(words, offset, i), new Leaf(words, offset + i, length - i)};
+		}
+
+		@Override
+		void appendTo(final PackedBases dest) {
+			dest.append(words, offset, length);
+		}
+
+		@Override
+		long word(final int from, final int count) {
+			int pos = offset + from;
+			int shift = (pos & 31) << 1;
+			long w = words[pos >>> 5] >>> shift;
+			if (shift != 0 && (pos & 31) + count > PackedBases.BASES_PER_WORD) {
+				w |= words[(pos >>> 5) + 1] << (64 - shift);
+			}
+			return count == PackedBases.BASES_PER_WORD ? w : w & ((1L << (count << 1)) - 1);
+		}
+
+		@Override
+		void computeHash() {
+			long h = 0;
+			int pos = offset;
+			int end = offset + length;
+			while (pos < end && (pos & 31) != 0) {
+				h = h * HASH_BASE + PackedBases.code(words, pos++);
+			}
+			// whole words are read from a register, 32 bases at a time.
+			for (; end - pos >= PackedBases.BASES_PER_WORD; pos += PackedBases.BASES_PER_WORD) {
+				long w = words[pos >>> 5];
+				for (int i = 0; i < PackedBases.BASES_PER_WORD; i++, w >>>= 2) {
+					h = h * HASH_BASE + ((int) w & PackedBases.CODE_MASK);
+				}
+			}
+			while (pos < end) {
+				h = h * HASH_BASE + PackedBases.code(words, pos++);
+			}
+			setHash(h, powerOf(length));
+		}
+
+		@Override
+		void decode(final int from, final int count, final char[] dest, final int destPos, final char[] alphabet) {
+			int pos = offset + from;
+			int d = destPos;
+			int end = destPos + count;
+			// whole words are decoded from a register, 32 bases at a time.
+			while (d < end && (pos & 31) != 0) {
+				dest[d++] = alphabet[PackedBases.code(words, pos++)];
+			}
+			while (end - d >= PackedBases.BASES_PER_WORD) {
+				long w = words[pos >>> 5];
+				for (int i = 0; i < PackedBases.BASES_PER_WORD; i++, w >>>= 2) {
+					dest[d++] = alphabet[(int) w & PackedBases.CODE_MASK];
+				}
+				pos += PackedBases.BASES_PER_WORD;
+			}
+			while (d < end) {
+				dest[d++] = alphabet[PackedBases.code(words, pos++)];
+			}
+		}
+	}
+
+	/**
+	 * A run of base characters read in place from a buffer, usually a memory mapped file.
+	 */
+	static final class ByteLeaf extends BaseRope {
+
+		private final ByteBuffer bytes;
+		private final int offset;
+		private final int length;
+
+		/**
+		 * Create a leaf over a range of a buffer.
+		 *
+		 * @param bytes the buffer holding the base characters.
+		 * @param offset the position of the first base in the buffer.
+		 * @param length the number of bases.
+		 */
+		ByteLeaf(final ByteBuffer bytes, final int offset, final int length) {
+			this.bytes = bytes;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		int length() {
+			return length;
+		}
+
+		@Override
+		int height() {
+			return 0;
+		}
+
+		@Override
+		int code(final int i) {
+			return PackedBases.codeOf(bytes.get(offset + i));
+		}
+
+		@Override
+		BaseRope[] split(final int i) {
+			if (i == 0) {
+				return new BaseRope[] {EMPTY, this};
+			}
+			if (i == length) {
+				return new BaseRope[] {this, EMPTY};
+			}
+			return new BaseRope[] {new ByteLeaf(bytes, offset, i), new ByteLeaf(bytes, offset + i, length - i)};
+		}
+
+		@Override
+		void appendTo(final PackedBases dest) {
+			for (int i = 0; i < length; i++) {
+				dest.append(PackedBases.codeOf(bytes.get(offset + i)));
+			}
+		}
+
+		@Override
+		long word(final int from, final int count) {
+			long w = 0;
+			for (int i = count - 1; i >= 0; i--) {
+				w = (w << 2) | PackedBases.codeOf(bytes.get(offset + from + i));
+			}
+			return w;
+		}
+
+		@Override
+		void computeHash() {
+			long h = 0;
+			for (int i = 0; i < length; i++) {
+				h = h * HASH_BASE + PackedBases.codeOf(bytes.get(offset + i));
+			}
+			setHash(h, powerOf(length));
+		}
+
+		@Override
+		void decode(final int from, final int count, final char[] dest, final int destPos, final char[] alphabet) {
+			for (int i = 0; i < count; i++) {
+				dest[destPos + i] = alphabet[PackedBases.codeOf(bytes.get(offset + from + i))];
+			}
+		}
+	}
+
+	/**
+	 * The concatenation of two non empty ropes.
+	 */
+	static final class Concat extends BaseRope {
+
+		private final BaseRope left;
+		private final BaseRope right;
+		private final int length;
+		private final int height;
+
+		/**
+		 * Create the concatenation of two ropes.
+		 *
+		 * @param left the rope holding the first bases.
+		 * @param right the rope holding the last bases.
+		 */
+		Concat(final BaseRope left, final BaseRope right) {
+			this.left = left;
+			this.right = right;
+			this.length = left.length() + right.length();
+			this.height = Math.max(left.height(), right.height()) + 1;
+		}
+
+		@Override
+		int length() {
+			return length;
+		}
+
+		@Override
+		int height() {
+			return height;
+		}
+
+		@Override
+		int code(final int i) {
+			BaseRope node = this;
+			int pos = i;
+			while (node instanceof Concat) {
+				Concat c = (Concat) node;
+				if (pos < c.left.length()) {
+					node = c.left;
+				} else {
+					pos -= c.left.length();
+					node = c.right;
+				}
+			}
+			return node.code(pos);
+		}
+
+		@Override
+		BaseRope[] split(final int i) {
+			if (i == 0) {
+				return new BaseRope[] {EMPTY, this};
+			}
+			if (i == length) {
+				return new BaseRope[] {this, EMPTY};
+			}
+			int leftLength = left.length();
+			if (i == leftLength) {
+				return new BaseRope[] {left, right};
+			}
+			if (i < leftLength) {
+				BaseRope[] parts = left.split(i);
+				parts[1] = concat(parts[1], right);
+				return parts;
+			}
+			BaseRope[] parts = right.split(i - leftLength);
+			parts[0] = concat(left, parts[0]);
+			return parts;
+		}
+
+		@Override
+		void appendTo(final PackedBases dest) {
+			left.appendTo(dest);
+			right.appendTo(dest);
+		}
+
+		@Override
+		long word(final int from, final int count) {
+			int leftLength = left.length();
+			if (from + count <= leftLength) {
+				return left.word(from, count);
+			}
+			if (from >= leftLength) {
+				return right.word(from - leftLength, count);
+			}
+			int inLeft = leftLength - from;
+			return left.word(from, inLeft) | right.word(0, count - inLeft) << (inLeft << 1);
+		}
+
+		@Override
+		void computeHash() {
+			setHash(left.hash() * right.power() + right.hash(), left.power() * right.power());
+		}
+
+		@Override
+		void decode(final int from, final int count, final char[] dest, final int destPos, final char[] alphabet) {
+			int leftLength = left.length();
+			int inLeft = Math.max(0, Math.min(count, leftLength - from));
+			if (inLeft > 0) {
+				left.decode(from, inLeft, dest, destPos, alphabet);
+			}
+			if (count > inLeft) {
+				right.decode(Math.max(0, from - leftLength), count - inLeft, dest, destPos + inLeft, alphabet);
+			}
+		}
+	}
+
+	/**
+	 * The leaves of a rope from first to last, or from last to first, with the number of bases
+	 * of the current one already walked.
+	 */
+	private static final class Leaves {
+
+		/**
+		 * The nodes whose other side is still to be walked, the innermost last.
+		 */
+		private final BaseRope[] pending;
+		private final boolean backward;
+		private int depth;
+		private BaseRope leaf;
+		private int pos;
+
+		Leaves(final BaseRope rope) {
+			this(rope, false);
+		}
+
+		Leaves(final BaseRope rope, final boolean backward) {
+			this.pending = new BaseRope[rope.height() + 1];
+			this.backward = backward;
+			descend(rope);
+		}
+
+		/**
+		 * Move past a number of bases, at most those left in the current leaf.
+		 */
+		void skip(final int count) {
+			pos += count;
+			if (pos == leaf.length() && depth > 0) {
+				Concat node = (Concat) pending[--depth];
+				descend(backward ? node.left : node.right);
+			}
+		}
+
+		private void descend(final BaseRope rope) {
+			BaseRope node = rope;
+			while (node instanceof Concat) {
+				pending[depth++] = node;
+				node = backward ? ((Concat) node).right : ((Concat) node).left;
+			}
+			leaf = node;
+			pos = 0;
+		}
+	}
+}
@@ -3,6 +3,11 @@
  */
 package cisc187.dna;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.*;
 
 /**
@@ -10,10 +15,28 @@ import java.util.*;
  * either a DNA or an RNA fragment. The class stores the sequence of characters that make up the
  * fragment and the fragments type. a DNA fragment can only hold: A,C,G or T and an RNA fragment can
  * only hold: A,C,G or U. If a fragment contains no characters its type is EMPTY.
+ * <p>
+ * The bases are kept 2 bits per base in the packed leaves of a {@link BaseRope} and read back
+ * with {@link #baseAt(int)} and {@link #length()}. {@link #getSequence()} is only a view of the
+ * packed bases for code that still expects a list of characters. Clipping and appending split and
+ * join the rope instead of moving bases.
+ * </p>
  */
 public class BaseSequence {
 
-	private static final String CR = System.lineSeparator();
+	/**
+	 * The number of characters written to an output at a time.
+	 */
+	private static final int CHUNK_SIZE = 4096;
+	/**
+	 * The chunk every thread turns bases into characters in, reused by every print.
+	 */
+	private static final ThreadLocal<char[]> CHUNK = new ThreadLocal<char[]>() {
+		@Override
+		protected char[] initialValue() {
+			return new char[CHUNK_SIZE];
+		}
+	};
 	/**
 	 * The valid DNA characters.
 	 */
@@ -23,9 +46,9 @@ public class BaseSequence {
 	 */
 	private static final String RNA_CHARS = "AGCU";
 	/**
-	 * The characters that make up the BaseSequence.
+	 * The rope of packed bases that make up the BaseSequence.
 	 */
-	private List<Character> sequence;
+	private BaseRope bases;
 	/**
 	 * The BaseSequences type (either DNA, RNA or EMPTY).
 	 */
@@ -39,29 +62,81 @@ public class BaseSequence {
 	 * @param type the sequenceType of the BaseSequence.
 	 */
 	public BaseSequence(final String sequence, final SequenceType type) {
-		char[] chars = sequence.toCharArray();
-		this.sequence = new LinkedList<Character>();
-		for (char c : chars) {
-			if (!type.isValid(c)) {
-				System.out.print("One or more invalid characters in sequence." + CR);
+		PackedBases packed = type.pack(sequence);
+		if (packed == null) {
+			Diagnostics.report(Status.INVALID_CHARACTERS);
+			this.bases = BaseRope.EMPTY;
+			this.type = SequenceType.EMPTY;
+			return;
+		}
+		this.type = type;
+		this.bases = BaseRope.of(packed);
+	}
+
+	/**
+	 * Create a BaseSequence with a specified sequence and type.
+	 *
+	 * @param sequence the sequence of characters that the BaseSequence will contain.
+	 * @param type the sequenceType BaseSequence will have.
+	 */
+	public BaseSequence(final List<Character> sequence, final SequenceType type) {
+		PackedBases packed = new PackedBases(sequence.size());
+		this.bases = BaseRope.EMPTY;
+		for (char c : sequence) {
+			int code = type.codeOf(c);
+			if (code < 0) {
+				Diagnostics.report(Status.INVALID_CHARACTERS);
 				this.type = SequenceType.EMPTY;
 				return;
 			}
+			packed.append(code);
 		}
 		this.type = type;
-		for (char c : chars) {
-			this.sequence.add(c);
+		this.bases = BaseRope.of(packed);
+	}
+
+	/**
+	 * Create a BaseSequence that reads its bases in place from a buffer of base characters, such
+	 * as a memory mapped file. The bases are never copied, edits only build new nodes over ranges
+	 * of the buffer. They are checked once, up front and a window at a time, which reads every
+	 * page of the buffer once; that is the price of rejecting an invalid buffer before it is
+	 * stored rather than at some later edit. If the buffer contains an invalid character for the
+	 * given type an empty BaseSequence will be created.
+	 *
+	 * @param bytes the buffer holding one base character per byte, never changed afterwards.
+	 * @param type the sequenceType of the BaseSequence.
+	 */
+	BaseSequence(final ByteBuffer bytes, final SequenceType type) {
+		int length = bytes.limit();
+		if (!type.accepts(bytes, length)) {
+			Diagnostics.report(Status.INVALID_CHARACTERS);
+			this.bases = BaseRope.EMPTY;
+			this.type = SequenceType.EMPTY;
+			return;
 		}
+		this.bases = BaseRope.of(bytes, 0, length);
+		this.type = type;
 	}
 
 	/**
-	 * Create a BaseSequence with a specified sequence and type.
+	 * Create a BaseSequence from bases that are already packed.
 	 *
-	 * @param sequence the sequence of characters that the BaseSequence will contain.
+	 * @param bases the packed bases, owned by the new BaseSequence.
 	 * @param type the sequenceType BaseSequence will have.
 	 */
-	public BaseSequence(final List<Character> sequence, final SequenceType type) {
-		this.sequence = sequence;
+	BaseSequence(final PackedBases bases, final SequenceType type) {
+		this.bases = BaseRope.of(bases);
+		this.type = type;
+	}
+
+	/**
+	 * Create a BaseSequence that holds the bases of a rope.
+	 *
+	 * @param bases the rope of bases, it may be shared since ropes are never changed.
+	 * @param type the sequenceType BaseSequence will have.
+	 */
+	BaseSequence(final BaseRope bases, final SequenceType type) {
+		this.bases = bases;
 		this.type = type;
 	}
 
@@ -69,7 +144,7 @@ public class BaseSequence {
 	 * Create an empty BaseSequence.
 	 */
 	public BaseSequence() {
-		this.sequence = new LinkedList<Character>();
+		this.bases = BaseRope.EMPTY;
 		this.type = SequenceType.EMPTY;
 	}
 
@@ -80,18 +155,48 @@ public class BaseSequence {
 	 */
 	@Override
 	public String toString() {
-		String chars = "";
-		for (char c : this.sequence) {
-			chars += "" + Character.toUpperCase(c);
+		StringBuilder chars = new StringBuilder(this.bases.length() + 8);
+		try {
+			print(chars);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		if (type == SequenceType.EMPTY) {
-			return "[" + chars + "]";
+		return chars.toString();
+	}
+
+	/**
+	 * Write this BaseSequence to an output in the same form as {@link #toString()}. The bases are
+	 * turned into characters a chunk at a time, so no String of the whole sequence is built.
+	 *
+	 * @param out the output to write to.
+	 * @throws IOException if the output can not be written.
+	 */
+	public void print(final Appendable out) throws IOException {
+		out.append('[');
+		if (type != SequenceType.EMPTY) {
+			out.append(type.name()).append(": ");
+		}
+		int length = this.bases.length();
+		char[] chunk = CHUNK.get();
+		CharBuffer wrapped = out instanceof Writer || out instanceof StringBuilder || length == 0 ? null : CharBuffer.wrap(chunk);
+		for (int i = 0; i < length; i += chunk.length) {
+			int count = Math.min(chunk.length, length - i);
+			this.bases.decode(i, count, chunk, 0, type.bases());
+			if (out instanceof Writer) {
+				((Writer) out).write(chunk, 0, count);
+			} else if (out instanceof StringBuilder) {
+				((StringBuilder) out).append(chunk, 0, count);
+			} else {
+				out.append(wrapped, 0, count);
+			}
 		}
-		return "[" + type + ": " + chars + "]";
+		out.append(']');
 	}
 
 	/**
-	 * checks if an object is equal to this BaseSequnce object.
+	 * checks if an object is equal to this BaseSequnce object. Sequences of different lengths
+	 * or hashes are told apart without reading their bases, equal ones are compared a word at a
+	 * time where their leaves are, skipping the leaves both share.
 	 *
 	 * @param o the object to be compared with this object
 	 * @return true if the objects are equal.
@@ -102,13 +207,23 @@ public class BaseSequence {
 			return false;
 		}
 		BaseSequence b = (BaseSequence) o;
-		return this.sequence.equals(b.getSequence()) && this.type == b.type;
+		if (this.type != b.type || this.bases.length() != b.bases.length()) {
+			return false;
+		}
+		return this.bases.hash() == b.bases.hash() && BaseRope.sameBases(this.bases, b.bases);
 	}
 
+	/**
+	 * Get the hash code of this BaseSequence, from the polynomial hash its bases keep, so only
+	 * the parts changed since the last call are read.
+	 *
+	 * @return the hash code.
+	 */
 	@Override
 	public int hashCode() {
+		long bases = this.bases.hash();
 		int hash = 5;
-		hash = 71 * hash + Objects.hashCode(this.sequence);
+		hash = 71 * hash + (int) (bases ^ (bases >>> 32));
 		hash = 71 * hash + Objects.hashCode(this.type);
 		return hash;
 	}
@@ -117,10 +232,45 @@ public class BaseSequence {
 	 * Clear all of the characters in the BaseSequence and change its SequenceType field to EMPTY.
 	 */
 	public void clear() {
-		this.sequence.clear();
+		this.bases = BaseRope.EMPTY;
 		this.type = SequenceType.EMPTY;
 	}
 
+	/**
+	 * Check if the characters from positions start to end can be clipped, without clipping them
+	 * or writing anything.
+	 *
+	 * @param start the position of the first character to clip.
+	 * @param end the position of the last character to clip.
+	 * @return {@link Status#OK}, {@link Status#CLIP_START} if start is outside of the sequence,
+	 *     or {@link Status#CLIP_END} if end is after its end.
+	 */
+	public Status checkClip(final int start, final int end) {
+		int size = this.bases.length();
+		if (start < 0 || start >= size) {
+			return Status.CLIP_START;
+		} else if (end >= size) {
+			return Status.CLIP_END;
+		}
+		return Status.OK;
+	}
+
+	/**
+	 * Check if the characters from positions start to end can be clipped, as
+	 * {@link #checkClip(int, int)} does, and report why if they can not.
+	 *
+	 * @param start the position of the first character to clip.
+	 * @param end the position of the last character to clip.
+	 * @return the status of the clip.
+	 */
+	Status validateClip(final int start, final int end) {
+		Status status = checkClip(start, end);
+		if (status != Status.OK) {
+			Diagnostics.report(status, null, status == Status.CLIP_END ? end : start, this.bases.length() - 1);
+		}
+		return status;
+	}
+
 	/**
 	 * Replace the sequence with a clipped sequence where the characters from positions start to end
 	 * (inclusive) are removed. It is an error if start has a value less than zero, or if start or
@@ -135,27 +285,17 @@ public class BaseSequence {
 	public BaseSequence clip(final int start, final int end) {
 		int st = start;
 		int en = end;
-		List<Character> clipped = new LinkedList<Character>();
-		if (st < 0) {
-			System.out.print("Unable to clip fragment starting at " + st + "."
-				+ CR + "Start must be between 0 and " + (this.sequence.size() - 1) + "." + CR);
-			return new BaseSequence();
-		} else if (st >= this.sequence.size()) {
-			System.out.print("Unable to clip fragment starting at " + st + "."
-				+ CR + "Start must be between 0 and " + (this.sequence.size() - 1) + "." + CR);
-			return new BaseSequence();
-		} else if (en >= this.sequence.size()) {
-			System.out.print("Unable to clip fragment ending at " + en + "."
-				+ CR + "End must be less than or equal to " + (this.sequence.size() - 1) + "." + CR);
+		int size = this.bases.length();
+		if (validateClip(st, en) != Status.OK) {
 			return new BaseSequence();
 		} else if (st > en) { //clip all of the elements in the list
 			st = 0;
-			en = this.sequence.size() - 1;
+			en = size - 1;
 		} 
-		for (int i = 0; i <= (en - st); i++) {
-			clipped.add(this.sequence.remove(st));
-		}
-		return new BaseSequence(clipped, this.type);
+		BaseRope[] head = this.bases.split(st);
+		BaseRope[] tail = head[1].split(en + 1 - st);
+		this.bases = BaseRope.concat(head[0], tail[1]);
+		return new BaseSequence(tail[0], this.type);
 	}
 
 	/**
@@ -170,7 +310,7 @@ public class BaseSequence {
 	 * @return the clipped fragment.
 	 */
 	public BaseSequence clip(final int start) {
-		return clip(start, this.sequence.size() - 1);
+		return clip(start, this.bases.length() - 1);
 	}
 
 	/**
@@ -183,27 +323,88 @@ public class BaseSequence {
 	}
 
 	/**
-	 * Get the sequence of this BaseSequence.
+	 * Get the number of bases in this BaseSequence.
+	 *
+	 * @return the length of this BaseSequence.
+	 */
+	public int length() {
+		return this.bases.length();
+	}
+
+	/**
+	 * Get the base at a position in this BaseSequence.
+	 *
+	 * @param index the position of the base, from 0 to length() - 1.
+	 * @return the upper case character of the base.
+	 */
+	public char baseAt(final int index) {
+		if (index < 0 || index >= this.bases.length()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + this.bases.length());
+		}
+		return this.type.baseOf(this.bases.code(index));
+	}
+
+	/**
+	 * Get the sequence of this BaseSequence. The list is a read only view of the packed bases,
+	 * use {@link #baseAt(int)} and {@link #length()} to avoid boxing every base.
 	 *
 	 * @return the sequence of this BaseSequence.
 	 */
 	public List<Character> getSequence() {
-		return this.sequence;
+		return new AbstractList<Character>() {
+			@Override
+			public Character get(int index) {
+				return baseAt(index);
+			}
+
+			@Override
+			public int size() {
+				return bases.length();
+			}
+		};
+	}
+
+	/**
+	 * Get the rope holding the bases of this BaseSequence. A rope never changes, every change of
+	 * this BaseSequence gives it a new rope.
+	 *
+	 * @return the rope.
+	 */
+	BaseRope rope() {
+		return this.bases;
+	}
+
+	/**
+	 * Get the bases of this BaseSequence gathered into packed storage of their own.
+	 *
+	 * @return a copy of the bases.
+	 */
+	PackedBases packed() {
+		return this.bases.toPacked();
+	}
+
+	/**
+	 * Add the bases of another BaseSequence to the end of this one.
+	 *
+	 * @param tail the BaseSequence to add, it must have the same type as this one.
+	 */
+	void append(final BaseSequence tail) {
+		this.bases = BaseRope.concat(this.bases, tail.bases);
 	}
 
 	/**
 	 * Make a copy of this BaseSequence. The copy will be an BaseSequence object that is equal to
 	 * this BaseSequence.
+	 * <p>
+	 * The bases are shared, not copied, so a copy takes constant time whatever the length. This
+	 * is safe since ropes never change: clipping, swapping or transcribing either BaseSequence
+	 * afterwards builds a new rope for it and leaves the other one as it was.
+	 * </p>
 	 *
 	 * @return the copy of this BaseSequence.
 	 */
 	public BaseSequence copy() {
-		String copyseq = "";
-		for (Character c : this.sequence) {
-			copyseq += "" + c;
-		}
-		SequenceType copytype = this.type;
-		return new BaseSequence(copyseq, copytype);
+		return new BaseSequence(this.bases, this.type);
 	}
 
 	/**
@@ -211,31 +412,53 @@ public class BaseSequence {
 	 * this BaseSequence into RNA only if its sequenceType is DNA otherwise do nothing. After
 	 * changing the sequenceType, invert the order of the sequence and for each occurrence of the
 	 * letters A,C,G, and T change them to U,G,C and A respectively.
+	 *
+	 * @return {@link Status#OK}, or {@link Status#NOT_DNA} if the sequence was left unchanged.
 	 */
-	public void transcribe() {
-		List<Character> temp = new LinkedList<Character>();
+	public Status transcribe() {
 		if (this.type != SequenceType.DNA) {
-			System.out.print("Can only transcribe DNA sequences." + CR);
-			return;
+			return Diagnostics.report(Status.NOT_DNA);
 		}
 		this.type = SequenceType.RNA;
-		for (int i = this.sequence.size() - 1; i >= 0; i--) {
-			temp.add(this.sequence.get(i));
-		}
-		for (int i = 0; i < temp.size(); i++) {
-			switch (Character.toUpperCase(temp.get(i))) {
-				case 'A':
-					this.sequence.set(i, 'U');
-					break;
-				case 'C':
-					this.sequence.set(i, 'G');
-					break;
-				case 'G':
-					this.sequence.set(i, 'C');
-					break;
-				case 'T':
-					this.sequence.set(i, 'A');
-			}
+		reverseBases();
+		return Status.OK;
+	}
+
+	/**
+	 * Replace this BaseSequence by its reverse complement, without changing its sequenceType:
+	 * invert the order of the sequence and change every A,C,G and T (or U) to T (or U),G,C and A
+	 * respectively.
+	 *
+	 * @return {@link Status#OK}, or {@link Status#EMPTY_SEQUENCE} if the sequence is empty.
+	 */
+	public Status reverseComplement() {
+		if (this.type == SequenceType.EMPTY) {
+			return Diagnostics.report(Status.EMPTY_SEQUENCE, "reverse complement");
 		}
+		reverseBases();
+		return Status.OK;
+	}
+
+	/**
+	 * Translate every reading frame of this BaseSequence into a protein, one letter per amino
+	 * acid and {@code *} for a stop codon. A DNA sequence is read as the coding strand of the RNA
+	 * it would be transcribed to.
+	 *
+	 * @return the proteins of frames +1, +2, +3, -1, -2 and -3, as named by
+	 *     {@link Translation#name(int)}.
+	 */
+	String[] translate() {
+		return Translation.frames(this.bases.toPacked());
+	}
+
+	/**
+	 * Reverse and complement the bases.
+	 */
+	private void reverseBases() {
+		// the rope may be shared, so its bases are gathered once into new words which are then
+		// reversed and complemented in place.
+		PackedBases reversed = this.bases.toPacked();
+		reversed.reverseComplement();
+		this.bases = BaseRope.of(reversed);
 	}
 }
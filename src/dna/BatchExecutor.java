@@ -0,0 +1,162 @@
+package cisc187.dna;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs operations in windows, running operations that touch different fragment list positions
+ * at the same time. Within a window every operation waits for the last earlier operation on
+ * each of its positions, and an operation that may touch every position waits for all earlier
+ * operations and is waited for by all later ones. The output of every operation is collected
+ * and written out in the order the operations were submitted, so both the fragment list and the
+ * output end up exactly as if the operations had run one at a time.
+ */
+final class BatchExecutor {
+
+	/**
+	 * The number of operations collected before they are run, if no other size is given.
+	 */
+	static final int DEFAULT_WINDOW = 1024;
+
+	/**
+	 * The stream every pool thread writes its output to, sent to the buffer of the operation it
+	 * is running. It is made once per thread since a PrintStream is costly to create.
+	 */
+	private static final ThreadLocal<Capture> CAPTURE = new ThreadLocal<Capture>() {
+		@Override
+		protected Capture initialValue() {
+			return new Capture();
+		}
+	};
+
+	private final ForkJoinPool pool;
+	private final int window;
+	private final List<Operation> pending = new ArrayList<Operation>();
+
+	/**
+	 * Create an executor running windows of operations on a pool.
+	 *
+	 * @param pool the pool to run the operations on.
+	 * @param window the number of operations collected before they are run.
+	 */
+	BatchExecutor(final ForkJoinPool pool, final int window) {
+		this.pool = pool;
+		this.window = window;
+	}
+
+	/**
+	 * Add an operation to the current window, running the window if it is full.
+	 *
+	 * @param operation the operation to run.
+	 */
+	void submit(final Operation operation) {
+		pending.add(operation);
+		if (pending.size() >= window) {
+			flush();
+		}
+	}
+
+	/**
+	 * Run every operation of the current window and write their output.
+	 */
+	void flush() {
+		int n = pending.size();
+		if (n == 0) {
+			return;
+		}
+		List<CompletableFuture<Void>> done = new ArrayList<CompletableFuture<Void>>(n);
+		ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[n];
+		Map<Integer, Integer> lastOnSlot = new HashMap<Integer, Integer>();
+		int barrier = -1;
+		for (int i = 0; i < n; i++) {
+			final Operation operation = pending.get(i);
+			final ByteArrayOutputStream output = new ByteArrayOutputStream();
+			outputs[i] = output;
+			List<CompletableFuture<Void>> after = new ArrayList<CompletableFuture<Void>>();
+			int[] slots = operation.slots();
+			if (slots == null) {
+				for (int j = barrier < 0 ? 0 : barrier; j < i; j++) {
+					after.add(done.get(j));
+				}
+				barrier = i;
+				lastOnSlot.clear();
+			} else {
+				for (int slot : slots) {
+					Integer last = lastOnSlot.put(slot, i);
+					if (last != null && last != i) {
+						after.add(done.get(last));
+					} else if (barrier >= 0) {
+						after.add(done.get(barrier));
+					}
+				}
+			}
+			Runnable task = new Runnable() {
+				@Override
+				public void run() {
+					Capture capture = CAPTURE.get();
+					capture.target = output;
+					Console.redirect(capture.stream);
+					try {
+						operation.run();
+					} finally {
+						capture.stream.flush();
+						capture.target = null;
+						Console.restore();
+					}
+				}
+			};
+			done.add(CompletableFuture.allOf(after.toArray(new CompletableFuture<?>[after.size()])).thenRunAsync(task, pool));
+		}
+		pending.clear();
+		PrintStream out = Console.out();
+		for (int i = 0; i < n; i++) {
+			try {
+				done.get(i).join();
+			} catch (CompletionException e) {
+				// stop where running one at a time would have stopped.
+				out.flush();
+				throw propagate(e.getCause());
+			}
+			byte[] bytes = outputs[i].toByteArray();
+			out.write(bytes, 0, bytes.length);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Forwards everything written to it to the output buffer of the current operation.
+	 */
+	private static final class Capture extends OutputStream {
+
+		private final PrintStream stream = new PrintStream(this);
+		private ByteArrayOutputStream target;
+
+		@Override
+		public void write(final int b) {
+			target.write(b);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) {
+			target.write(b, off, len);
+		}
+	}
+
+	private static RuntimeException propagate(final Throwable cause) {
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new CompletionException(cause);
+	}
+}
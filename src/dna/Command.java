@@ -0,0 +1,67 @@
+package cisc187.dna;
+
+/**
+ * The commands understood by the Sequencer. Command names are not case sensitive.
+ */
+enum Command {
+	INSERT,
+	REMOVE,
+	PRINT,
+	CLIP,
+	COPY,
+	SWAP,
+	TRANSCRIBE,
+	REVCOMP,
+	TRANSLATE,
+	IMPORT,
+	MAP,
+	FIND,
+	COUNT,
+	LOCATE,
+	SAVE,
+	LOAD,
+	CHECKPOINT,
+	STATS,
+	WORKSPACE;
+
+	private static final Command[] COMMANDS = values();
+
+	/**
+	 * The lower case name of the command, as it is written in a commands file.
+	 */
+	private final String keyword = name().toLowerCase();
+
+	/**
+	 * Get the name of this command as it is written in a commands file.
+	 *
+	 * @return the lower case name of the command.
+	 */
+	String keyword() {
+		return keyword;
+	}
+
+	/**
+	 * Find the command whose name is written in a range of ASCII bytes, ignoring case.
+	 *
+	 * @param bytes the bytes holding the name.
+	 * @param start the position of the first byte of the name.
+	 * @param length the number of bytes in the name.
+	 * @return the command, or null if no command has that name.
+	 */
+	static Command lookup(final byte[] bytes, final int start, final int length) {
+		for (Command command : COMMANDS) {
+			String keyword = command.keyword;
+			if (keyword.length() != length) {
+				continue;
+			}
+			int i = 0;
+			while (i < length && (bytes[start + i] | 0x20) == keyword.charAt(i)) {
+				i++;
+			}
+			if (i == length) {
+				return command;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,306 @@
+package cisc187.dna;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Splits a commands file into lines and whitespace separated tokens. The file is read into a
+ * byte buffer and every token is parsed where it lies in the buffer: command names are matched
+ * and numbers are converted without creating a String, only {@link #next()} creates one, for
+ * tokens such as sequences and file names that are passed on as text.
+ * <p>
+ * A line is read with {@link #nextLine()} and its tokens are then taken in order, the same way
+ * as with a Scanner over the line.
+ * </p>
+ */
+final class CommandReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final InputStream in;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	/**
+	 * The number of bytes read into the buffer.
+	 */
+	private int limit;
+	/**
+	 * The position of the next token on the current line.
+	 */
+	private int pos;
+	/**
+	 * The position of the line break ending the current line.
+	 */
+	private int lineEnd;
+	private boolean eof;
+
+	/**
+	 * Create a reader of commands.
+	 *
+	 * @param in the stream holding the commands, one per line.
+	 */
+	CommandReader(final InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Move to the next line.
+	 *
+	 * @return true if there was another line.
+	 * @throws IOException if the stream can not be read.
+	 */
+	boolean nextLine() throws IOException {
+		int start = lineEnd < limit ? lineEnd + 1 : limit;
+		int end = indexOfLineBreak(start);
+		while (end == limit && !eof) {
+			// the line does not fit in what is left of the buffer, move it to the front.
+			System.arraycopy(buffer, start, buffer, 0, limit - start);
+			limit -= start;
+			end -= start;
+			start = 0;
+			if (limit == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+			int read = in.read(buffer, limit, buffer.length - limit);
+			if (read < 0) {
+				eof = true;
+			} else {
+				limit += read;
+			}
+			end = indexOfLineBreak(end);
+		}
+		if (start == limit && eof) {
+			pos = lineEnd = limit;
+			return false;
+		}
+		pos = start;
+		lineEnd = end;
+		return true;
+	}
+
+	/**
+	 * Check if the current line has another token.
+	 *
+	 * @return true if there is another token.
+	 */
+	boolean hasNext() {
+		skipWhitespace();
+		return pos < lineEnd;
+	}
+
+	/**
+	 * Check if what is left of the current line is some text, ignoring the whitespace around
+	 * it. No token is taken.
+	 *
+	 * @param text the text, without whitespace.
+	 * @return true if the rest of the line is the text.
+	 */
+	boolean restIs(final String text) {
+		skipWhitespace();
+		int end = lineEnd;
+		while (end > pos && isWhitespace(buffer[end - 1])) {
+			end--;
+		}
+		if (end - pos != text.length()) {
+			return false;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			if (buffer[pos + i] != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Read the next token as a command name.
+	 *
+	 * @return the command, or null if the token is not the name of a command.
+	 */
+	Command nextCommand() {
+		int start = tokenStart();
+		return Command.lookup(buffer, start, pos - start);
+	}
+
+	/**
+	 * Read the next token as one of a set of words, ignoring case.
+	 *
+	 * @param words the upper case words the token may be.
+	 * @return the index of the word, or -1 if the token is none of the words.
+	 */
+	int nextChoice(final String[] words) {
+		int start = tokenStart();
+		int length = pos - start;
+		for (int w = 0; w < words.length; w++) {
+			String word = words[w];
+			if (word.length() != length) {
+				continue;
+			}
+			int i = 0;
+			while (i < length && Character.toUpperCase((char) buffer[start + i]) == word.charAt(i)) {
+				i++;
+			}
+			if (i == length) {
+				return w;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Read the next token as a decimal int.
+	 *
+	 * @return the value of the token.
+	 * @throws NumberFormatException if the token is not an int.
+	 */
+	int nextInt() {
+		long value = nextLong();
+		if (value != (int) value) {
+			throw new NumberFormatException("Value out of range: " + value);
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Read the next token as a decimal long.
+	 *
+	 * @return the value of the token.
+	 * @throws NumberFormatException if the token is not a long.
+	 */
+	long nextLong() {
+		int start = tokenStart();
+		return parseLong(start, pos);
+	}
+
+	/**
+	 * Check if the next token is a range of positions, written {@code from..to}. No token is
+	 * taken.
+	 *
+	 * @return true if the next token holds {@code ..}.
+	 */
+	boolean hasNextRange() {
+		skipWhitespace();
+		int i = pos;
+		while (i + 1 < lineEnd && !isWhitespace(buffer[i])) {
+			if (buffer[i] == '.' && buffer[i + 1] == '.') {
+				return true;
+			}
+			i++;
+		}
+		return false;
+	}
+
+	/**
+	 * Read the next token as a range of positions, {@code from..to}, both ends included.
+	 *
+	 * @return the first and the last position of the range.
+	 * @throws NumberFormatException if the token is not two ints joined by {@code ..}, or the
+	 *     last is before the first.
+	 */
+	int[] nextRange() {
+		int start = tokenStart();
+		int dots = start;
+		while (dots + 1 < pos && !(buffer[dots] == '.' && buffer[dots + 1] == '.')) {
+			dots++;
+		}
+		if (dots + 1 >= pos) {
+			throw numberFormat(start);
+		}
+		long from = parseLong(start, dots);
+		long to = parseLong(dots + 2, pos);
+		if (from != (int) from || to != (int) to || to < from) {
+			throw numberFormat(start);
+		}
+		return new int[] {(int) from, (int) to};
+	}
+
+	/**
+	 * Parse a range of the buffer as a decimal long.
+	 */
+	private long parseLong(final int start, final int end) {
+		int i = start;
+		boolean negative = i < end && buffer[i] == '-';
+		if (negative || (i < end && buffer[i] == '+')) {
+			i++;
+		}
+		if (i == end) {
+			throw numberFormat(start, end);
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+				throw numberFormat(start, end);
+			}
+			value = value * 10 - digit;
+		}
+		if (!negative) {
+			if (value == Long.MIN_VALUE) {
+				throw numberFormat(start, end);
+			}
+			value = -value;
+		}
+		return value;
+	}
+
+	/**
+	 * Read the next token as text.
+	 *
+	 * @return the token.
+	 */
+	String next() {
+		int start = tokenStart();
+		return new String(buffer, start, pos - start, StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Skip to the end of the next token.
+	 *
+	 * @return the position of the first byte of the token.
+	 */
+	private int tokenStart() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		int start = pos;
+		while (pos < lineEnd && !isWhitespace(buffer[pos])) {
+			pos++;
+		}
+		return start;
+	}
+
+	private NumberFormatException numberFormat(final int start) {
+		return numberFormat(start, pos);
+	}
+
+	private NumberFormatException numberFormat(final int start, final int end) {
+		return new NumberFormatException("For input string: \""
+			+ new String(buffer, start, end - start, StandardCharsets.ISO_8859_1) + "\"");
+	}
+
+	private void skipWhitespace() {
+		while (pos < lineEnd && isWhitespace(buffer[pos])) {
+			pos++;
+		}
+	}
+
+	private int indexOfLineBreak(final int from) {
+		int i = from;
+		while (i < limit && buffer[i] != '\n') {
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean isWhitespace(final byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+	}
+}
@@ -0,0 +1,278 @@
+package cisc187.dna;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A FragmentList that may be used by several threads at once.
+ * <p>
+ * Every slot holds a BaseSequence that is never changed once it is stored: a change works on a
+ * snapshot of the slot, which shares the immutable bases of the old sequence, and the result is
+ * then published in its place. Slots are read and written with volatile semantics, so reading
+ * or printing a slot never waits, it sees either the old or the new sequence but never a half
+ * changed one.
+ * </p>
+ * <p>
+ * Changes are serialized per slot by a fixed set of striped locks, so commands on different
+ * slots run side by side. A command touching two slots takes the stripe with the lower index
+ * first, so two commands taking the same pair of stripes can not deadlock. A change of many
+ * positions at once takes every stripe, in order, for the whole batch.
+ * </p>
+ */
+public class ConcurrentFragmentList extends FragmentList {
+
+	/**
+	 * The largest number of lock stripes.
+	 */
+	private static final int MAX_STRIPES = 64;
+
+	private final ReentrantLock[] locks;
+
+	/**
+	 * Create a ConcurrentFragmentList of default size.
+	 */
+	public ConcurrentFragmentList() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * Create a ConcurrentFragmentList with a specified size.
+	 * @param size the size of the fragmentList
+	 */
+	public ConcurrentFragmentList(final int size) {
+		super(size);
+		int stripes = 1;
+		while (stripes < size && stripes < MAX_STRIPES) {
+			stripes <<= 1;
+		}
+		locks = new ReentrantLock[stripes];
+		for (int i = 0; i < stripes; i++) {
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	@Override
+	public void insert(final int pos, final SequenceType type, final String sequence) {
+		ReentrantLock lock = lockFor(pos);
+		lock.lock();
+		try {
+			super.insert(pos, type, sequence);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void map(final int pos, final SequenceType type, final Path file, final long offset, final long length) throws IOException {
+		ReentrantLock lock = lockFor(pos);
+		lock.lock();
+		try {
+			super.map(pos, type, file, offset, length);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void remove(final int pos) {
+		ReentrantLock lock = lockFor(pos);
+		lock.lock();
+		try {
+			super.remove(pos);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void transcribe(final int pos) {
+		ReentrantLock lock = lockFor(pos);
+		lock.lock();
+		try {
+			super.transcribe(pos);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void reverseComplement(final int pos) {
+		ReentrantLock lock = lockFor(pos);
+		lock.lock();
+		try {
+			super.reverseComplement(pos);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public BaseSequence clip(final int pos, final int start, final int end) {
+		ReentrantLock lock = lockFor(pos);
+		lock.lock();
+		try {
+			return super.clip(pos, start, end);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public BaseSequence clip(final int pos, final int start) {
+		ReentrantLock lock = lockFor(pos);
+		lock.lock();
+		try {
+			return super.clip(pos, start);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Copy one slot into another. Both slots are locked, so no change of the source can come
+	 * between the copy and its entry in the journal.
+	 *
+	 * @param pos1 the position of the sequence to be copied.
+	 * @param pos2 the position to be copied to.
+	 */
+	@Override
+	public void copy(final int pos1, final int pos2) {
+		ReentrantLock first = locks[Math.min(stripe(pos1), stripe(pos2))];
+		ReentrantLock second = locks[Math.max(stripe(pos1), stripe(pos2))];
+		first.lock();
+		try {
+			second.lock();
+			try {
+				super.copy(pos1, pos2);
+			} finally {
+				second.unlock();
+			}
+		} finally {
+			first.unlock();
+		}
+	}
+
+	@Override
+	public void swap(final int pos1, final int start1, final int pos2, final int start2) {
+		ReentrantLock first = locks[Math.min(stripe(pos1), stripe(pos2))];
+		ReentrantLock second = locks[Math.max(stripe(pos1), stripe(pos2))];
+		first.lock();
+		try {
+			second.lock();
+			try {
+				super.swap(pos1, start1, pos2, start2);
+			} finally {
+				second.unlock();
+			}
+		} finally {
+			first.unlock();
+		}
+	}
+
+	@Override
+	public void insertBatch(final int[] positions, final SequenceType type, final String sequence) {
+		lockAll();
+		try {
+			super.insertBatch(positions, type, sequence);
+		} finally {
+			unlockAll();
+		}
+	}
+
+	@Override
+	public void removeAll(final int[] positions) {
+		lockAll();
+		try {
+			super.removeAll(positions);
+		} finally {
+			unlockAll();
+		}
+	}
+
+	@Override
+	public void transcribeAll(final int[] positions) {
+		lockAll();
+		try {
+			super.transcribeAll(positions);
+		} finally {
+			unlockAll();
+		}
+	}
+
+	@Override
+	public void reverseComplementAll(final int[] positions) {
+		lockAll();
+		try {
+			super.reverseComplementAll(positions);
+		} finally {
+			unlockAll();
+		}
+	}
+
+	@Override
+	public void clipRange(final int[] positions, final int start, final int end) {
+		lockAll();
+		try {
+			super.clipRange(positions, start, end);
+		} finally {
+			unlockAll();
+		}
+	}
+
+	@Override
+	public void clipRange(final int[] positions, final int start) {
+		lockAll();
+		try {
+			super.clipRange(positions, start);
+		} finally {
+			unlockAll();
+		}
+	}
+
+	@Override
+	void put(final int pos, final BaseSequence sequence) {
+		ReentrantLock lock = lockFor(pos);
+		lock.lock();
+		try {
+			super.put(pos, sequence);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	void setSlot(final int pos, final BaseSequence sequence) {
+		ReentrantLock lock = lockFor(pos);
+		lock.lock();
+		try {
+			super.setSlot(pos, sequence);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void lockAll() {
+		for (ReentrantLock lock : locks) {
+			lock.lock();
+		}
+	}
+
+	private void unlockAll() {
+		for (int i = locks.length - 1; i >= 0; i--) {
+			locks[i].unlock();
+		}
+	}
+
+	/**
+	 * Get the lock guarding a position. Positions outside of the list still map to a lock, so
+	 * the lock may be taken before the position is checked.
+	 */
+	private ReentrantLock lockFor(final int pos) {
+		return locks[stripe(pos)];
+	}
+
+	private int stripe(final int pos) {
+		return pos & (locks.length - 1);
+	}
+}
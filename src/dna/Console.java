@@ -0,0 +1,83 @@
+package cisc187.dna;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+
+/**
+ * The output that sequencer messages and printed fragments are written to. It is System.out,
+ * unless the current thread has redirected it, which lets commands run on other threads have
+ * their output collected and written out in the order the commands were given.
+ */
+final class Console {
+
+	private static final ThreadLocal<PrintStream> REDIRECT = new ThreadLocal<PrintStream>();
+	/**
+	 * The writer of every thread, kept for as long as the thread writes to the same stream.
+	 */
+	private static final ThreadLocal<StreamWriter> WRITER = new ThreadLocal<StreamWriter>();
+
+	/**
+	 * Not an instantiable class
+	 */
+	private Console() {
+	}
+
+	/**
+	 * Get the output of the current thread.
+	 *
+	 * @return the stream the current thread writes to.
+	 */
+	static PrintStream out() {
+		PrintStream out = REDIRECT.get();
+		return out != null ? out : System.out;
+	}
+
+	/**
+	 * Get a buffered writer to the output of the current thread, so text is written to it in
+	 * large blocks. The writer and its buffers are made once per thread and output stream and
+	 * reused by every later call, so printing allocates nothing.
+	 *
+	 * @return the writer, which must be flushed when done.
+	 */
+	static Writer writer() {
+		PrintStream out = out();
+		StreamWriter writer = WRITER.get();
+		if (writer == null || writer.stream != out) {
+			writer = new StreamWriter(out);
+			WRITER.set(writer);
+		}
+		return writer.writer;
+	}
+
+	/**
+	 * Send the output of the current thread to a stream until {@link #restore()} is called.
+	 *
+	 * @param out the stream to write to.
+	 */
+	static void redirect(final PrintStream out) {
+		REDIRECT.set(out);
+	}
+
+	/**
+	 * Send the output of the current thread back to System.out.
+	 */
+	static void restore() {
+		REDIRECT.remove();
+	}
+
+	/**
+	 * A buffered writer and the stream it writes to.
+	 */
+	private static final class StreamWriter {
+
+		private final PrintStream stream;
+		private final Writer writer;
+
+		StreamWriter(final PrintStream stream) {
+			this.stream = stream;
+			this.writer = new BufferedWriter(new OutputStreamWriter(stream));
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package cisc187.dna;
+
+/**
+ * Where rejected changes are reported. Every rejection goes to the current {@link Sink} as a
+ * {@link Status} and its values; the sink decides when and where its message is written.
+ * <p>
+ * The default sink, {@link #CONSOLE}, writes every message at once to the {@link Console} of the
+ * reporting thread, so messages come out in order with the rest of the output, as they always
+ * did. {@link AsyncDiagnostics} instead queues them without building any text and writes them
+ * in batches on a thread of its own, for runs where many changes are expected to fail.
+ * </p>
+ */
+final class Diagnostics {
+
+	/**
+	 * Receives the rejections of changes.
+	 */
+	interface Sink {
+
+		/**
+		 * Report a rejected change.
+		 *
+		 * @param status why the change was rejected, never {@link Status#OK}.
+		 * @param subject the name of the command or the text the message names, or null.
+		 * @param a the first number of the message.
+		 * @param b the second number of the message.
+		 * @param c the third number of the message.
+		 */
+		void report(Status status, String subject, long a, long b, long c);
+
+		/**
+		 * Write every rejection reported so far.
+		 */
+		void flush();
+	}
+
+	/**
+	 * The sink writing every message to the console of the reporting thread as it is reported.
+	 */
+	static final Sink CONSOLE = new Sink() {
+		@Override
+		public void report(final Status status, final String subject, final long a, final long b, final long c) {
+			StringBuilder message = new StringBuilder(128);
+			status.format(message, subject, a, b, c);
+			Console.out().print(message);
+		}
+
+		@Override
+		public void flush() {
+		}
+	};
+
+	/**
+	 * The sink dropping every rejection, for changes that were already reported once, such as
+	 * those replayed from a journal.
+	 */
+	static final Sink SILENT = new Sink() {
+		@Override
+		public void report(final Status status, final String subject, final long a, final long b, final long c) {
+		}
+
+		@Override
+		public void flush() {
+		}
+	};
+
+	private static volatile Sink sink = CONSOLE;
+
+	/**
+	 * Not an instantiable class
+	 */
+	private Diagnostics() {
+	}
+
+	/**
+	 * Send every later rejection to a sink.
+	 *
+	 * @param to the sink, {@link #CONSOLE} to write them out at once again.
+	 */
+	static void use(final Sink to) {
+		sink = to;
+	}
+
+	/**
+	 * Get the sink rejections are sent to.
+	 *
+	 * @return the current sink.
+	 */
+	static Sink sink() {
+		return sink;
+	}
+
+	/**
+	 * Report a rejection whose message has no values.
+	 *
+	 * @param status why the change was rejected.
+	 * @return the status.
+	 */
+	static Status report(final Status status) {
+		sink.report(status, null, 0, 0, 0);
+		return status;
+	}
+
+	/**
+	 * Report a rejection whose message names a command.
+	 *
+	 * @param status why the change was rejected.
+	 * @param subject the name of the command.
+	 * @return the status.
+	 */
+	static Status report(final Status status, final String subject) {
+		sink.report(status, subject, 0, 0, 0);
+		return status;
+	}
+
+	/**
+	 * Report a rejection.
+	 *
+	 * @param status why the change was rejected.
+	 * @param subject the name of the command, or null.
+	 * @param a the first number of the message.
+	 * @param b the second number of the message.
+	 * @return the status.
+	 */
+	static Status report(final Status status, final String subject, final long a, final long b) {
+		sink.report(status, subject, a, b, 0);
+		return status;
+	}
+
+	/**
+	 * Report a rejection.
+	 *
+	 * @param status why the change was rejected.
+	 * @param subject the name of the command, or null.
+	 * @param a the first number of the message.
+	 * @param b the second number of the message.
+	 * @param c the third number of the message.
+	 * @return the status.
+	 */
+	static Status report(final Status status, final String subject, final long a, final long b, final long c) {
+		sink.report(status, subject, a, b, c);
+		return status;
+	}
+}
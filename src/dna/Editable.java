@@ -39,6 +39,21 @@ public interface Editable {
    */
   void transcribe(final int pos);
 
+  /**
+   * Replace the sequence at position {@code pos} in the fragment list 
+   * by its reverse complement, keeping its type. 
+   * @param pos the target position within the fragment list
+   */
+  void reverseComplement(final int pos);
+
+  /**
+   * Translate the sequence at position {@code pos} in the fragment list 
+   * into proteins and output them, one for each of its six reading frames. 
+   * The sequence itself is not changed. 
+   * @param pos the target position within the fragment list
+   */
+  void translate(final int pos);
+
   /** 
    * Replace the sequence at fragment position {@code pos} with 
    * a clipped version of the sequence. 
@@ -113,4 +128,59 @@ public interface Editable {
    * @param start2 the starting character position within the pos2 fragment
    */
   void swap(final int pos1, final int start1, final int pos2, final int start2);
+
+  /**
+   * Insert the same sequence at every one of {@code positions}. 
+   * The sequence is checked once and stored once, shared by all the positions. 
+   * If any position is outside of the fragment list, or the sequence is not valid for its type, 
+   * no change is made to any position. 
+   * @param positions the target positions within the fragment list, each at most once
+   * @param type the sequence type of the sequence being added (DNA, RNA)
+   * @param sequence the actual sequence to be added
+   */
+  void insertBatch(final int[] positions, final SequenceType type, final String sequence);
+
+  /**
+   * Remove the sequences at every one of {@code positions}. 
+   * If any position is outside of the fragment list, no change is made to any position. 
+   * @param positions the target positions within the fragment list, each at most once
+   */
+  void removeAll(final int[] positions);
+
+  /**
+   * Transcribe every DNA sequence at {@code positions} into an RNA sequence. 
+   * Positions not holding DNA are skipped and counted in a single message. 
+   * If any position is outside of the fragment list, no change is made to any position. 
+   * @param positions the target positions within the fragment list, each at most once
+   */
+  void transcribeAll(final int[] positions);
+
+  /**
+   * Replace every sequence at {@code positions} by its reverse complement. 
+   * Empty positions are skipped and counted in a single message. 
+   * If any position is outside of the fragment list, no change is made to any position. 
+   * @param positions the target positions within the fragment list, each at most once
+   */
+  void reverseComplementAll(final int[] positions);
+
+  /**
+   * Clip the same characters, from {@code start} to {@code end}, 
+   * out of every sequence at {@code positions}, as {@link #clip(int, int, int)} does. 
+   * Sequences the characters are not inside of are skipped and counted in a single message. 
+   * If any position is outside of the fragment list, no change is made to any position. 
+   * @param positions the target positions within the fragment list, each at most once
+   * @param start the start location within each sequence to be clipped
+   * @param end the final location within each sequence to be clipped
+   */
+  void clipRange(final int[] positions, final int start, final int end);
+
+  /**
+   * Clip the characters from {@code start} to the end 
+   * out of every sequence at {@code positions}, as {@link #clip(int, int)} does. 
+   * Sequences shorter than {@code start} are skipped and counted in a single message. 
+   * If any position is outside of the fragment list, no change is made to any position. 
+   * @param positions the target positions within the fragment list, each at most once
+   * @param start the start location within each sequence to be clipped
+   */
+  void clipRange(final int[] positions, final int start);
 }
@@ -0,0 +1,141 @@
+package cisc187.dna;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the records of a FASTA or FASTQ file one BaseSequence at a time. The file is read
+ * through a fixed size byte buffer and every base is checked and packed as soon as it is read,
+ * so a record is never held as a String and the memory used is the packed record plus the
+ * buffer, no matter how large the file is.
+ * <p>
+ * FASTA records start with a {@code >} header line followed by any number of sequence lines.
+ * FASTQ records start with an {@code @} header line, followed by the sequence lines, a {@code +}
+ * line and as many quality characters as there were bases. Header and quality lines are skipped.
+ * Bases may be in upper or lower case.
+ * </p>
+ */
+public final class FastaReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int EOF = -1;
+
+	private final InputStream in;
+	private final SequenceType type;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int pos;
+	private int limit;
+
+	/**
+	 * Create a reader of FASTA or FASTQ records of a given type.
+	 *
+	 * @param in the stream to read from.
+	 * @param type the sequenceType of every record, DNA or RNA.
+	 */
+	public FastaReader(final InputStream in, final SequenceType type) {
+		this.in = in;
+		this.type = type;
+	}
+
+	/**
+	 * Read the next record. A record holding a character that is not valid for the type of this
+	 * reader is read to its end and returned as an empty BaseSequence.
+	 *
+	 * @return the next record, or null if there are no more records.
+	 * @throws IOException if the stream can not be read.
+	 */
+	public BaseSequence next() throws IOException {
+		int c = skipBlankLines();
+		if (c == EOF) {
+			return null;
+		}
+		boolean fastq = c == '@';
+		if (c == '>' || fastq) {
+			skipLine();
+		} else {
+			pos--;
+		}
+		PackedBases bases = new PackedBases();
+		boolean valid = true;
+		// every sequence character has a quality, those of rejected records too.
+		int length = 0;
+		while ((c = peek()) != EOF && c != '>' && !(fastq && c == '+')) {
+			pos++;
+			if (c == '\n' || c == '\r' || c == ' ' || c == '\t') {
+				continue;
+			}
+			length++;
+			int code = type.codeOf((char) c);
+			if (code < 0) {
+				valid = false;
+			} else if (valid) {
+				bases.append(code);
+			}
+		}
+		if (fastq && c == '+') {
+			skipLine();
+			skipQuality(length);
+		}
+		if (!valid) {
+			Diagnostics.report(Status.INVALID_CHARACTERS);
+			return new BaseSequence();
+		}
+		bases.trimToSize();
+		return new BaseSequence(bases, type);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Skip a number of quality characters, which may be wrapped over several lines.
+	 */
+	private void skipQuality(final int count) throws IOException {
+		int left = count;
+		int c;
+		while (left > 0 && (c = read()) != EOF) {
+			if (c != '\n' && c != '\r') {
+				left--;
+			}
+		}
+		skipLine();
+	}
+
+	private int skipBlankLines() throws IOException {
+		int c;
+		do {
+			c = read();
+		} while (c == '\n' || c == '\r' || c == ' ' || c == '\t');
+		return c;
+	}
+
+	private void skipLine() throws IOException {
+		int c;
+		do {
+			c = read();
+		} while (c != '\n' && c != EOF);
+	}
+
+	private int read() throws IOException {
+		int c = peek();
+		if (c != EOF) {
+			pos++;
+		}
+		return c;
+	}
+
+	private int peek() throws IOException {
+		if (pos == limit) {
+			limit = in.read(buffer, 0, buffer.length);
+			pos = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return EOF;
+			}
+		}
+		return buffer[pos] & 0xFF;
+	}
+}
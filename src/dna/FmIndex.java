@@ -0,0 +1,238 @@
+package cisc187.dna;
+
+import java.util.Arrays;
+
+/**
+ * An FM-index of one fragment: the Burrows-Wheeler transform of its bases plus a sampled suffix
+ * array, which counts the occurrences of a pattern in time proportional to the length of the
+ * pattern, whatever the length of the fragment.
+ * <p>
+ * The suffix array is built with SA-IS, which runs in linear time and reads the bases straight
+ * from their packed words; its reduced problems are stored inside the suffix array itself, so
+ * building needs one int per base plus a bit per base. Once built, the index keeps:
+ * </p>
+ * <ul>
+ * <li>the transform, packed 2 bits per base like the fragment,</li>
+ * <li>the count of every base before each block of {@link #BLOCK} transformed bases, the rest of
+ * a count being taken with a bit count over the words of the block, and</li>
+ * <li>the suffix array entries that are a multiple of {@link #SAMPLE}, found again by walking
+ * back through the transform.</li>
+ * </ul>
+ * <p>
+ * An index is immutable. It remembers the rope it was built from, so its owner can tell when
+ * the fragment has changed and the index must be built again.
+ * </p>
+ */
+final class FmIndex {
+
+	/**
+	 * The number of transformed bases between stored counts, two words.
+	 */
+	static final int BLOCK = 64;
+	/**
+	 * The distance between text positions whose suffix array entry is kept.
+	 */
+	static final int SAMPLE = 32;
+	private static final long LOW_BITS = 0x5555555555555555L;
+	private static final long[] REPEATED = {0L, LOW_BITS, ~LOW_BITS, -1L};
+
+	private final BaseRope text;
+	private final int length;
+	/**
+	 * The transform without its sentinel, which is stored as an A at row {@link #sentinel}.
+	 */
+	private final long[] bwt;
+	private final int sentinel;
+	/**
+	 * The count of every base in the transform before each block, 4 ints per block.
+	 */
+	private final int[] counts;
+	/**
+	 * The first row of every base in the sorted suffixes; the row of the sentinel is 0.
+	 */
+	private final int[] starts = new int[5];
+	/**
+	 * A bit for every row whose suffix array entry is kept.
+	 */
+	private final long[] sampled;
+	/**
+	 * The number of kept rows before each word of {@link #sampled}.
+	 */
+	private final int[] sampledBefore;
+	/**
+	 * The kept suffix array entries in row order.
+	 */
+	private final int[] samples;
+
+	/**
+	 * Build the index of a sequence.
+	 *
+	 * @param sequence the sequence to index.
+	 */
+	FmIndex(final BaseSequence sequence) {
+		this.text = sequence.rope();
+		PackedBases bases = text.toPacked();
+		this.length = bases.length();
+		int rows = length + 1;
+		int[] sa = new int[rows];
+		SuffixArray.build(bases, sa);
+
+		bwt = new long[PackedBases.wordsFor(rows)];
+		counts = new int[4 * (rows / BLOCK + 1)];
+		sampled = new long[(rows + 63) >>> 6];
+		sampledBefore = new int[sampled.length];
+		samples = new int[length / SAMPLE + 1];
+		int[] seen = new int[4];
+		int sentinelRow = 0;
+		int kept = 0;
+		long[] words = bases.words();
+		for (int row = 0; row < rows; row++) {
+			if (row % BLOCK == 0) {
+				System.arraycopy(seen, 0, counts, 4 * (row / BLOCK), 4);
+			}
+			int pos = sa[row];
+			if (pos == 0) {
+				sentinelRow = row;
+			} else {
+				int code = PackedBases.code(words, pos - 1);
+				bwt[row >>> 5] |= (long) code << ((row & 31) << 1);
+				seen[code]++;
+			}
+			if (pos % SAMPLE == 0) {
+				sampled[row >>> 6] |= 1L << row;
+				samples[kept++] = pos;
+			}
+		}
+		if (rows % BLOCK == 0) {
+			// the counts before the row after the last one.
+			System.arraycopy(seen, 0, counts, 4 * (rows / BLOCK), 4);
+		}
+		sentinel = sentinelRow;
+		for (int w = 0, before = 0; w < sampled.length; w++) {
+			sampledBefore[w] = before;
+			before += Long.bitCount(sampled[w]);
+		}
+		starts[0] = 1;
+		for (int c = 0; c < 4; c++) {
+			starts[c + 1] = starts[c] + seen[c];
+		}
+	}
+
+	/**
+	 * Check if this index was built from the bases a sequence holds now.
+	 *
+	 * @param sequence the sequence.
+	 * @return true if the sequence has not changed since this index was built from it.
+	 */
+	boolean isOf(final BaseSequence sequence) {
+		return sequence.rope() == text;
+	}
+
+	/**
+	 * Count the occurrences of a pattern.
+	 *
+	 * @param pattern the bases to count.
+	 * @return the number of places the pattern occurs.
+	 */
+	int count(final PackedBases pattern) {
+		long range = range(pattern);
+		return (int) (range >>> 32) - (int) range;
+	}
+
+	/**
+	 * Find every place a pattern occurs.
+	 *
+	 * @param pattern the bases to find.
+	 * @return the offsets of the pattern, in increasing order.
+	 */
+	int[] locate(final PackedBases pattern) {
+		long range = range(pattern);
+		int from = (int) range;
+		int to = (int) (range >>> 32);
+		int[] found = new int[to - from];
+		for (int row = from; row < to; row++) {
+			int steps = 0;
+			int r = row;
+			while ((sampled[r >>> 6] & (1L << r)) == 0) {
+				r = backward(r);
+				steps++;
+			}
+			found[row - from] = samples[sampledBefore[r >>> 6] + Long.bitCount(sampled[r >>> 6] & ((1L << r) - 1))] + steps;
+		}
+		Arrays.sort(found);
+		return found;
+	}
+
+	/**
+	 * Get the number of heap bytes used by the index, not counting the fragment.
+	 *
+	 * @return the size of the index in bytes.
+	 */
+	long sizeInBytes() {
+		return (long) bwt.length * Long.BYTES + (long) counts.length * Integer.BYTES
+			+ (long) sampled.length * Long.BYTES + (long) sampledBefore.length * Integer.BYTES
+			+ (long) samples.length * Integer.BYTES;
+	}
+
+	/**
+	 * Find the rows of the sorted suffixes that start with a pattern, matching it from its last
+	 * base to its first.
+	 *
+	 * @return the first row in the low 32 bits and the row after the last in the high 32 bits.
+	 */
+	private long range(final PackedBases pattern) {
+		int from = 0;
+		int to = length + 1;
+		for (int i = pattern.length() - 1; i >= 0 && from < to; i--) {
+			int c = pattern.code(i);
+			from = starts[c] + rank(c, from);
+			to = starts[c] + rank(c, to);
+		}
+		if (from >= to) {
+			return 0;
+		}
+		return ((long) to << 32) | from;
+	}
+
+	/**
+	 * Step from a row to the row of the suffix one base longer.
+	 */
+	private int backward(final int row) {
+		int c = (int) (bwt[row >>> 5] >>> ((row & 31) << 1)) & PackedBases.CODE_MASK;
+		return starts[c] + rank(c, row);
+	}
+
+	/**
+	 * Count a base in the rows of the transform before a row.
+	 */
+	private int rank(final int c, final int row) {
+		int block = row / BLOCK;
+		int rank = counts[4 * block + c];
+		int word = block * (BLOCK / PackedBases.BASES_PER_WORD);
+		int end = row >>> 5;
+		for (; word < end; word++) {
+			rank += matches(bwt[word], c);
+		}
+		int rest = row & 31;
+		if (rest != 0) {
+			rank += Long.bitCount(matchBits(bwt[word], c) & ((1L << (rest << 1)) - 1));
+		}
+		if (c == 0 && sentinel < row && sentinel >= block * BLOCK) {
+			// the sentinel is stored as an A, which the stored counts leave out.
+			rank--;
+		}
+		return rank;
+	}
+
+	private static int matches(final long word, final int c) {
+		return Long.bitCount(matchBits(word, c));
+	}
+
+	/**
+	 * Set the low bit of every 2 bit group of a word that holds a base.
+	 */
+	private static long matchBits(final long word, final int c) {
+		long x = word ^ REPEATED[c];
+		return ~(x | (x >>> 1)) & LOW_BITS;
+	}
+}
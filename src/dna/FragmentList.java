@@ -4,18 +4,35 @@
 package cisc187.dna;
 
 import cisc187.util.Printable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Scanner;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
 import java.util.ArrayList;
 import java.util.LinkedList;
 
 /**
- * Contains an array of BaseSequence DNA/RNA fragments that can be used by the Sequencer class.
+ * Contains a list of BaseSequence DNA/RNA fragments that can be used by the Sequencer class.
  * Acts as a helper class for the Sequencer class by making the required operations needed to 
  * execute the commands read in from the commands file(by the Sequencer class).  
- * The size of the array cant be changed after construction and all of the elements in the array 
+ * The size of the list cant be changed after construction and all of the fragments in the list 
  * are BaseSequence objects with no characters and of sequenceType EMPTY by default. 
+ * Empty fragments are not stored, so a list may have millions of positions and only use memory
+ * for the ones holding a sequence.
+ * Once a {@link Journal} is attached, every change is written to it before it is made.
+ * With an {@link InternPool}, equal fragments share their bases, in this list and across lists.
+ * A budget caps the packed bytes of the stored fragments: storing new bases, by an insert,
+ * import, map, load or copy, that would go over it is rejected and leaves the position unchanged.
  */
 public class FragmentList implements Editable, Printable {
 	
@@ -24,18 +41,35 @@ public class FragmentList implements Editable, Printable {
 	 * The size of the fragments array if no size is specified at construction.
 	 */
 	static int DEFAULT_SIZE = 16;
-	private BaseSequence[] fragments;
-	private int size;
+	private final SlotTable fragments;
+	private final int size;
+	private final KmerIndex index = new KmerIndex();
+	/**
+	 * The FM-index of every fragment that was counted or located in.
+	 */
+	private final Map<Integer, FmIndex> fmIndexes = new ConcurrentHashMap<>();
+	/**
+	 * The journal every change is written to before it is made, or null.
+	 */
+	private volatile Journal journal;
+	/**
+	 * The pool the bases of every stored fragment are shared through, or null.
+	 */
+	private InternPool pool;
+	/**
+	 * The packed bytes of every stored fragment, plus those reserved by changes being made.
+	 */
+	private final AtomicLong bytes = new AtomicLong();
+	/**
+	 * The largest number of packed bytes the stored fragments may take.
+	 */
+	private volatile long budget = Long.MAX_VALUE;
 
 	/**
 	 * Create a FragmentList of default size.
 	 */
 	public FragmentList() {
-		size = DEFAULT_SIZE;
-		fragments = new BaseSequence[size];
-		for (int i = 0; i < size; i++) {
-			fragments[i] = new BaseSequence();
-		}
+		this(DEFAULT_SIZE);
 	}
 	
 	/**
@@ -44,10 +78,7 @@ public class FragmentList implements Editable, Printable {
 	 */
 	public FragmentList(final int size) {
 		this.size = size;
-		fragments = new BaseSequence[size];
-		for (int i = 0; i < size; i++) {
-			fragments[i] = new BaseSequence();
-		}
+		fragments = new SlotTable(size);
 	}
 
 	/**
@@ -64,11 +95,13 @@ public class FragmentList implements Editable, Printable {
 	 */
 	@Override
 	public String toString() {
-		String list = "";
-		for (BaseSequence b : fragments) {
-			list += b.toString();
+		StringBuilder list = new StringBuilder();
+		try {
+			print(list);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		return list;
+		return list.toString();
 	}
 
 	@Override
@@ -76,15 +109,88 @@ public class FragmentList implements Editable, Printable {
 		if(!isPositionValid(pos,"insert")){
 			return;
 		}
-		char[] chars = sequence.toCharArray();
-		for (char c : chars) {
-			if (!type.isValid(c)) {
-				System.out.println("One or more invalid characters in sequence.");
+		// the sequence is checked as it is packed, an invalid one is reported and left empty.
+		BaseSequence seq = new BaseSequence(sequence, type);
+		if (seq.getType() != type || seq.length() != sequence.length()) {
+			return;
+		}
+		put(pos, seq);
+	}
+
+	/**
+	 * Insert the records read from a FASTA or FASTQ file into consecutive positions, starting at
+	 * position pos. A record with invalid characters leaves its position unchanged. Reading stops
+	 * at the end of the file or at the end of the fragment list.
+	 *
+	 * @param pos the position of the first record.
+	 * @param reader the reader of the records.
+	 * @return the number of positions that were read into.
+	 * @throws IOException if the records can not be read.
+	 */
+	public int insert(final int pos, final FastaReader reader) throws IOException {
+		if (!isPositionValid(pos, "insert")) {
+			return 0;
+		}
+		int next = pos;
+		BaseSequence record;
+		while (next < this.size && (record = reader.next()) != null) {
+			if (record.getType() != SequenceType.EMPTY) {
+				put(next, record);
+			}
+			next++;
+		}
+		return next - pos;
+	}
+
+	/**
+	 * Attach the sequence at position pos to a region of a file holding one base character per
+	 * byte. The region is memory mapped read only, so its bases stay in the operating system's
+	 * page cache instead of the heap and are read only when needed. Edits of the sequence never
+	 * write to the file, the edited parts are kept on the heap. Line breaks at the end of the
+	 * region are ignored; any other character that is not valid for the type is an error and
+	 * no change is made to the fragment list.
+	 *
+	 * @param pos the target position within the fragment list.
+	 * @param type the sequence type of the bases in the file.
+	 * @param file the file to map.
+	 * @param offset the position of the first base in the file.
+	 * @param length the number of bases to map, or -1 to map up to the end of the file.
+	 * @throws IOException if the file can not be mapped.
+	 */
+	public void map(final int pos, final SequenceType type, final Path file, final long offset, final long length) throws IOException {
+		if (!isPositionValid(pos, "map")) {
+			return;
+		}
+		MappedByteBuffer bytes;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = length < 0 ? channel.size() - offset : length;
+			if (offset < 0 || size < 0 || offset + size > channel.size() || size > Integer.MAX_VALUE) {
+				Diagnostics.report(Status.INVALID_REGION, file.toString(), offset, Integer.MAX_VALUE);
 				return;
 			}
+			bytes = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+		}
+		int end = bytes.limit();
+		while (end > 0 && (bytes.get(end - 1) == '\n' || bytes.get(end - 1) == '\r')) {
+			end--;
 		}
-		//memory leak?
-		fragments[pos] = new BaseSequence(sequence, type);
+		bytes.limit(end);
+		BaseSequence mapped = new BaseSequence(bytes, type);
+		if (mapped.getType() != type) {
+			return;
+		}
+		long reserved = reserve(pos, mapped);
+		if (reserved < 0) {
+			return;
+		}
+		Metrics.addBases(mapped.length());
+		// the region is journaled instead of the bases, which would copy it onto the heap.
+		Journal j = journal;
+		if (j != null) {
+			j.map(pos, type, file, offset, end);
+		}
+		setSlot(pos, mapped);
+		this.bytes.addAndGet(-reserved);
 	}
 
 	/**
@@ -96,7 +202,10 @@ public class FragmentList implements Editable, Printable {
 		if(!isPositionValid(pos,"remove")){
 			return;
 		}
-		fragments[pos].clear();
+		log(Journal.REMOVE, pos);
+		BaseSequence seq = slotForUpdate(pos);
+		seq.clear();
+		setSlot(pos, seq);
 	}
 
 	/**
@@ -108,11 +217,55 @@ public class FragmentList implements Editable, Printable {
 		if(!isPositionValid(pos,"transcribe")){
 			return;
 		}
-		if (fragments[pos].getType() != SequenceType.DNA) {
-			System.out.print("Can only transcribe DNA sequences." + CR);
+		if (slot(pos).getType() != SequenceType.DNA) {
+			Diagnostics.report(Status.NOT_DNA);
 			return;
 		}
-		fragments[pos].transcribe();
+		log(Journal.TRANSCRIBE, pos);
+		BaseSequence seq = slotForUpdate(pos);
+		seq.transcribe();
+		setSlot(pos, seq);
+	}
+
+	@Override
+	public void reverseComplement(final int pos) {
+		if (!isPositionValid(pos, "reverse complement")) {
+			return;
+		}
+		if (slot(pos).getType() == SequenceType.EMPTY) {
+			Diagnostics.report(Status.EMPTY_SEQUENCE, "reverse complement");
+			return;
+		}
+		log(Journal.REVERSE_COMPLEMENT, pos);
+		BaseSequence seq = slotForUpdate(pos);
+		seq.reverseComplement();
+		setSlot(pos, seq);
+	}
+
+	/**
+	 * Print the protein of every reading frame of the sequence at a position, one frame per
+	 * line, for example {@code Frame +1 of fragment 2: MA*}.
+	 *
+	 * @param pos the target position within the fragment list.
+	 */
+	@Override
+	public void translate(final int pos) {
+		if (!isPositionValid(pos, "translate")) {
+			return;
+		}
+		BaseSequence seq = slot(pos);
+		if (seq.getType() == SequenceType.EMPTY) {
+			Diagnostics.report(Status.EMPTY_SEQUENCE, "translate");
+			return;
+		}
+		Metrics.addBases(seq.length());
+		String[] proteins = seq.translate();
+		StringBuilder out = new StringBuilder();
+		for (int frame = 0; frame < proteins.length; frame++) {
+			out.append("Frame ").append(Translation.name(frame)).append(" of fragment ").append(pos)
+				.append(": ").append(proteins[frame]).append(CR);
+		}
+		Console.out().print(out);
 	}
 
 	/**
@@ -127,7 +280,15 @@ public class FragmentList implements Editable, Printable {
 		if(!isPositionValid(pos,"clip")){
 			return new BaseSequence();
 		}
-		return fragments[pos].clip(start, end);
+		// a rejected clip changes nothing, so it is not logged.
+		if (slot(pos).validateClip(start, end) != Status.OK) {
+			return new BaseSequence();
+		}
+		log(Journal.CLIP, pos, start, end);
+		BaseSequence seq = slotForUpdate(pos);
+		BaseSequence clipped = seq.clip(start, end);
+		setSlot(pos, seq);
+		return clipped;
 	}
 
 	/**
@@ -141,7 +302,15 @@ public class FragmentList implements Editable, Printable {
 		if(!isPositionValid(pos,"clip")){
 			return new BaseSequence();
 		}
-		return fragments[pos].clip(start);
+		BaseSequence stored = slot(pos);
+		if (stored.validateClip(start, stored.length() - 1) != Status.OK) {
+			return new BaseSequence();
+		}
+		log(Journal.CLIP_TAIL, pos, start);
+		BaseSequence seq = slotForUpdate(pos);
+		BaseSequence clipped = seq.clip(start);
+		setSlot(pos, seq);
+		return clipped;
 	}
 
 	/**
@@ -151,7 +320,18 @@ public class FragmentList implements Editable, Printable {
 	 */
 	@Override
 	public void copy(final int pos1, final int pos2) {
-		fragments[pos2] = fragments[pos1].copy();
+		if (!isPositionValid(pos1, "copy") || !isPositionValid(pos2, "copy")) {
+			return;
+		}
+		BaseSequence seq = slot(pos1);
+		long reserved = reserve(pos2, seq);
+		if (reserved < 0) {
+			return;
+		}
+		log(Journal.COPY, pos1, pos2);
+		Metrics.addBases(seq.length());
+		setSlot(pos2, seq.copy());
+		bytes.addAndGet(-reserved);
 	}
 
 	/**
@@ -169,27 +349,394 @@ public class FragmentList implements Editable, Printable {
 		if(!isPositionValid(pos2,"swap")){
 			return;
 		}
-		if (fragments[pos1].getType() != fragments[pos2].getType()) {
-			System.out.print("Unable to swap sequences. Sequences must be of the same type." + CR);
+		if (pos1 == pos2) {
+			Diagnostics.report(Status.SWAP_SAME_FRAGMENT, null, pos1, 0);
+			return;
+		}
+		BaseSequence first = slot(pos1);
+		BaseSequence second = slot(pos2);
+		if (first.getType() != second.getType()) {
+			Diagnostics.report(Status.TYPE_MISMATCH);
+			return;
+		}
+		if (start1 >= first.length() || start2 >= second.length()) {
+			Diagnostics.report(Status.SWAP_START, null, first.length(), first.length());
 			return;
 		}
-		if (start1 >= fragments[pos1].getSequence().size() || start2 >= fragments[pos2].getSequence().size()) {
-			System.out.print("Unable to clip tails for swapping. starting positions must be smaller than"
-				+ fragments[pos1].getSequence().size() + " and " + fragments[pos1].getSequence().size() + "." + CR);
+		// the bases only move, but the tails may need a word more than they had in their slots.
+		long reserved = reserve(pos1, packedBytes(start1 + second.length() - start2)
+			+ packedBytes(start2 + first.length() - start1) - packedBytes(first.length()) - packedBytes(second.length()));
+		if (reserved < 0) {
 			return;
 		}
-		// clip both tails and store them in a temp List.
-		List<Character> tail1 = fragments[pos1].clip(start1).getSequence();
-		List<Character> tail2 = fragments[pos2].clip(start2).getSequence();
-		// store the clipped remainders in a temp list.
-		List<Character> swapped1 = new LinkedList<Character>(fragments[pos1].getSequence());
-		List<Character> swapped2 = new LinkedList<Character>(fragments[pos2].getSequence());
+		log(Journal.SWAP, pos1, start1, pos2, start2);
+		first = slotForUpdate(pos1);
+		second = slotForUpdate(pos2);
+		// clip both tails, the remainders stay in their slots.
+		BaseSequence tail1 = first.clip(start1);
+		BaseSequence tail2 = second.clip(start2);
 		// concatenate the clipped tails in the new swapped order.
-		swapped1.addAll(tail2);
-		swapped2.addAll(tail1);
-		//since they both have the same type it shouldnt matter which one you call gettype() on.
-		fragments[pos1] = new BaseSequence(swapped1, fragments[pos1].getType());
-		fragments[pos2] = new BaseSequence(swapped2, fragments[pos1].getType());
+		first.append(tail2);
+		second.append(tail1);
+		setSlot(pos1, first);
+		setSlot(pos2, second);
+		bytes.addAndGet(-reserved);
+	}
+
+	@Override
+	public void insertBatch(final int[] positions, final SequenceType type, final String sequence) {
+		if (!arePositionsValid(positions, "insert")) {
+			return;
+		}
+		BaseSequence seq = new BaseSequence(sequence, type);
+		if (seq.getType() != type || seq.length() != sequence.length()) {
+			return;
+		}
+		// stored sequences are never changed, so every position can hold the same one.
+		for (int pos : positions) {
+			put(pos, seq);
+		}
+	}
+
+	@Override
+	public void removeAll(final int[] positions) {
+		editAll(positions, "remove", null, new BulkEdit() {
+			@Override
+			boolean appliesTo(final BaseSequence seq) {
+				return seq.getType() != SequenceType.EMPTY;
+			}
+
+			@Override
+			void log(final Journal journal, final int pos) {
+				journal.log(Journal.REMOVE, pos);
+			}
+
+			@Override
+			void apply(final BaseSequence seq) {
+				seq.clear();
+			}
+		});
+	}
+
+	@Override
+	public void transcribeAll(final int[] positions) {
+		editAll(positions, "transcribe", "Can only transcribe DNA sequences.", new BulkEdit() {
+			@Override
+			boolean appliesTo(final BaseSequence seq) {
+				return seq.getType() == SequenceType.DNA;
+			}
+
+			@Override
+			void log(final Journal journal, final int pos) {
+				journal.log(Journal.TRANSCRIBE, pos);
+			}
+
+			@Override
+			void apply(final BaseSequence seq) {
+				seq.transcribe();
+			}
+		});
+	}
+
+	@Override
+	public void reverseComplementAll(final int[] positions) {
+		editAll(positions, "reverse complement", "Can only reverse complement DNA or RNA sequences.", new BulkEdit() {
+			@Override
+			boolean appliesTo(final BaseSequence seq) {
+				return seq.getType() != SequenceType.EMPTY;
+			}
+
+			@Override
+			void log(final Journal journal, final int pos) {
+				journal.log(Journal.REVERSE_COMPLEMENT, pos);
+			}
+
+			@Override
+			void apply(final BaseSequence seq) {
+				seq.reverseComplement();
+			}
+		});
+	}
+
+	@Override
+	public void clipRange(final int[] positions, final int start, final int end) {
+		editAll(positions, "clip", "The clipped range must be inside the fragment.", new BulkEdit() {
+			@Override
+			boolean appliesTo(final BaseSequence seq) {
+				return seq.checkClip(start, end) == Status.OK;
+			}
+
+			@Override
+			void log(final Journal journal, final int pos) {
+				journal.log(Journal.CLIP, pos, start, end);
+			}
+
+			@Override
+			void apply(final BaseSequence seq) {
+				seq.clip(start, end);
+			}
+		});
+	}
+
+	@Override
+	public void clipRange(final int[] positions, final int start) {
+		editAll(positions, "clip", "The start of the clip must be inside the fragment.", new BulkEdit() {
+			@Override
+			boolean appliesTo(final BaseSequence seq) {
+				return start >= 0 && start < seq.length();
+			}
+
+			@Override
+			void log(final Journal journal, final int pos) {
+				journal.log(Journal.CLIP_TAIL, pos, start);
+			}
+
+			@Override
+			void apply(final BaseSequence seq) {
+				seq.clip(start);
+			}
+		});
+	}
+
+	/**
+	 * Make the same change to the sequences at many positions. The positions are checked once,
+	 * the positions the change applies to are written to the journal, then the changed
+	 * sequences are made in parallel on the common fork/join pool and stored in order. Only the
+	 * storing touches the list, so no more than a change of a single position does for each.
+	 *
+	 * @param positions the positions to change, each at most once.
+	 * @param command the name of the change, for the message of an invalid position.
+	 * @param skipped why the change does not apply to a position, printed after the number of
+	 *     positions it was skipped at, or null to skip them silently.
+	 * @param edit the change.
+	 */
+	private void editAll(final int[] positions, final String command, final String skipped, final BulkEdit edit) {
+		if (!arePositionsValid(positions, command)) {
+			return;
+		}
+		final int[] targets = new int[positions.length];
+		int count = 0;
+		Journal j = journal;
+		for (int pos : positions) {
+			if (edit.appliesTo(slot(pos))) {
+				if (j != null) {
+					edit.log(j, pos);
+				}
+				targets[count++] = pos;
+			}
+		}
+		BaseSequence[] changed = new BaseSequence[count];
+		Arrays.parallelSetAll(changed, new IntFunction<BaseSequence>() {
+			@Override
+			public BaseSequence apply(final int i) {
+				BaseSequence seq = slot(targets[i]).copy();
+				edit.apply(seq);
+				return seq;
+			}
+		});
+		long bases = 0;
+		for (int i = 0; i < count; i++) {
+			bases += slot(targets[i]).length();
+			setSlot(targets[i], changed[i]);
+		}
+		Metrics.addBases(bases);
+		if (skipped != null && count < positions.length) {
+			Diagnostics.report(Status.SKIPPED, skipped, positions.length - count, 0);
+		}
+	}
+
+	/**
+	 * A change made to the sequences of many positions by {@link #editAll}.
+	 */
+	private abstract static class BulkEdit {
+
+		/**
+		 * Check if the change applies to a sequence. It must not print, sequences it does not
+		 * apply to are skipped.
+		 */
+		abstract boolean appliesTo(BaseSequence seq);
+
+		/**
+		 * Write the change of a position to the journal.
+		 */
+		abstract void log(Journal journal, int pos);
+
+		/**
+		 * Change a copy of a sequence the change applies to. It may run on any thread.
+		 */
+		abstract void apply(BaseSequence seq);
+	}
+
+	/**
+	 * Save every fragment to a binary snapshot file, which {@link #load(Path)} reads back.
+	 *
+	 * @param file the snapshot file, replaced if it exists.
+	 * @throws IOException if the file can not be written.
+	 */
+	public void save(final Path file) throws IOException {
+		Snapshot.write(this, file);
+	}
+
+	/**
+	 * Replace every fragment with the fragments saved in a snapshot file. Nothing is replaced
+	 * if the file is not a valid snapshot.
+	 *
+	 * @param file the snapshot file.
+	 * @throws IOException if the file can not be read or is not a valid snapshot.
+	 */
+	public void load(final Path file) throws IOException {
+		Snapshot.read(this, file);
+	}
+
+	/**
+	 * Print every place a sequence occurs in the fragments of a type, as the position of the
+	 * fragment and the offset of the sequence in it, for example
+	 * {@code [DNA: ACG] found at 0:4, 3:0}.
+	 *
+	 * @param type the sequenceType of the fragments to search.
+	 * @param sequence the bases to find.
+	 */
+	public void find(final SequenceType type, final String sequence) {
+		long[] found = search(type, sequence);
+		if (found != null) {
+			printFound(type, sequence, found);
+		}
+	}
+
+	/**
+	 * Find every place a sequence occurs in the fragments of a type.
+	 *
+	 * @param type the sequenceType of the fragments to search.
+	 * @param sequence the bases to find.
+	 * @return the places found, each the position of the fragment in the high 32 bits and the
+	 *     offset in the fragment in the low 32 bits, in increasing order; or null if the sequence
+	 *     is not valid.
+	 */
+	long[] search(final SequenceType type, final String sequence) {
+		PackedBases pattern = pattern(type, sequence, "find");
+		return pattern == null ? null : index.search(this, type, pattern);
+	}
+
+	/**
+	 * Print the number of times a sequence occurs in one fragment, for example
+	 * {@code [DNA: ACG] found 3 times in fragment 2.} The fragment is searched with an FM-index,
+	 * built the first time the fragment is searched after it changed.
+	 *
+	 * @param pos the position of the fragment.
+	 * @param sequence the bases to count, of the type of the fragment.
+	 */
+	public void count(final int pos, final String sequence) {
+		FmIndex fm = fmIndex(pos, "count");
+		if (fm == null) {
+			return;
+		}
+		SequenceType type = slot(pos).getType();
+		PackedBases pattern = pattern(type, sequence, "count");
+		if (pattern != null) {
+			Console.out().print("[" + type.name() + ": " + sequence.toUpperCase() + "] found "
+				+ fm.count(pattern) + " times in fragment " + pos + "." + CR);
+		}
+	}
+
+	/**
+	 * Print every place a sequence occurs in one fragment, in the same form as
+	 * {@link #find(SequenceType, String)}. The fragment is searched with an FM-index, built the
+	 * first time the fragment is searched after it changed.
+	 *
+	 * @param pos the position of the fragment.
+	 * @param sequence the bases to find, of the type of the fragment.
+	 */
+	public void locate(final int pos, final String sequence) {
+		FmIndex fm = fmIndex(pos, "locate");
+		if (fm == null) {
+			return;
+		}
+		SequenceType type = slot(pos).getType();
+		PackedBases pattern = pattern(type, sequence, "locate");
+		if (pattern == null) {
+			return;
+		}
+		int[] offsets = fm.locate(pattern);
+		long[] found = new long[offsets.length];
+		for (int i = 0; i < offsets.length; i++) {
+			found[i] = ((long) pos << 32) | offsets[i];
+		}
+		printFound(type, sequence, found);
+	}
+
+	/**
+	 * Get the FM-index of a fragment, building it if the fragment changed since it was built.
+	 *
+	 * @param pos the position of the fragment.
+	 * @param command the command needing the index, for the error messages.
+	 * @return the index, or null if the position is not valid or the fragment is empty.
+	 */
+	FmIndex fmIndex(final int pos, final String command) {
+		if (!isPositionValid(pos, command)) {
+			return null;
+		}
+		BaseSequence seq = slot(pos);
+		if (seq.getType() == SequenceType.EMPTY) {
+			Diagnostics.report(Status.EMPTY_FRAGMENT, command);
+			return null;
+		}
+		FmIndex fm = fmIndexes.get(pos);
+		if (fm == null || !fm.isOf(seq)) {
+			Metrics.addBases(seq.length());
+			fm = new FmIndex(seq);
+			fmIndexes.put(pos, fm);
+		}
+		return fm;
+	}
+
+	/**
+	 * Pack the bases of a sequence to search for.
+	 *
+	 * @return the packed bases, or null if the sequence is empty or not valid for the type.
+	 */
+	private static PackedBases pattern(final SequenceType type, final String sequence, final String command) {
+		if (sequence.isEmpty()) {
+			Diagnostics.report(Status.EMPTY_PATTERN, command);
+			return null;
+		}
+		Metrics.addBases(sequence.length());
+		PackedBases pattern = new PackedBases(sequence.length());
+		for (int i = 0; i < sequence.length(); i++) {
+			int code = type.codeOf(sequence.charAt(i));
+			if (code < 0) {
+				Diagnostics.report(Status.INVALID_CHARACTERS);
+				return null;
+			}
+			pattern.append(code);
+		}
+		return pattern;
+	}
+
+	/**
+	 * Print the places a sequence was found, as fragment:offset pairs.
+	 */
+	private static void printFound(final SequenceType type, final String sequence, final long[] found) {
+		Writer out = Console.writer();
+		try {
+			out.write("[" + type.name() + ": " + sequence.toUpperCase() + "]");
+			if (found.length == 0) {
+				out.write(" not found.");
+			} else {
+				out.write(" found at ");
+				for (int i = 0; i < found.length; i++) {
+					if (i > 0) {
+						out.write(", ");
+					}
+					out.write(Integer.toString((int) (found[i] >>> 32)));
+					out.write(':');
+					out.write(Integer.toString((int) found[i]));
+				}
+			}
+			out.write(CR);
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 
 	/**
@@ -197,10 +744,33 @@ public class FragmentList implements Editable, Printable {
 	 */
 	@Override
 	public void print() {
-		for (BaseSequence b : fragments) {
-			System.out.print(b);
+		Writer out = Console.writer();
+		try {
+			print(out);
+			out.write(CR);
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Write every fragment to an output, one after the other, without building Strings.
+	 *
+	 * @param out the output to write to.
+	 * @throws IOException if the output can not be written.
+	 */
+	@Override
+	public void print(final Appendable out) throws IOException {
+		for (int i = 0; i < size; i++) {
+			BaseSequence seq = fragments.get(i);
+			if (seq == null) {
+				out.append("[]");
+			} else {
+				Metrics.addBases(seq.length());
+				seq.print(out);
+			}
 		}
-		System.out.println();
 	}
 
 	/**
@@ -212,7 +782,16 @@ public class FragmentList implements Editable, Printable {
 		if(!isPositionValid(pos,"print")){
 			return;
 		}
-		System.out.print(fragments[pos] + CR);
+		Writer out = Console.writer();
+		try {
+			BaseSequence seq = slot(pos);
+			Metrics.addBases(seq.length());
+			seq.print(out);
+			out.write(CR);
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 
 	/**
@@ -221,19 +800,289 @@ public class FragmentList implements Editable, Printable {
 	 * @return 
 	 */
 	BaseSequence sequenceAt(final int pos) {
-		return fragments[pos];
+		return slot(pos);
+	}
+
+	/**
+	 * Get the sequence stored at a position, to be read.
+	 *
+	 * @param pos a valid position in the fragment list.
+	 * @return the sequence at that position, a new empty sequence if none is stored there.
+	 */
+	BaseSequence slot(final int pos) {
+		BaseSequence seq = fragments.get(pos);
+		return seq == null ? new BaseSequence() : seq;
+	}
+
+	/**
+	 * Get a copy of the sequence stored at a position, to be changed. Once changed it must be
+	 * stored back with {@link #setSlot(int, BaseSequence)}. The stored sequence itself is never
+	 * changed, so the bases it holds can be released when it is replaced; copying only shares
+	 * its rope, whatever its length.
+	 *
+	 * @param pos a valid position in the fragment list.
+	 * @return the sequence to change.
+	 */
+	BaseSequence slotForUpdate(final int pos) {
+		BaseSequence seq = slot(pos);
+		Metrics.addBases(seq.length());
+		return seq.copy();
+	}
+
+	/**
+	 * Find the first position holding a fragment at or after a position.
+	 *
+	 * @param from the position to start at.
+	 * @return the position, or -1 if every position from there on is empty.
+	 */
+	int nextOccupied(final int from) {
+		return fragments.next(from);
+	}
+
+	/**
+	 * Store a sequence at a position as a change of the list, written to the journal first if
+	 * there is one.
+	 *
+	 * @param pos a valid position in the fragment list.
+	 * @param sequence the sequence to store.
+	 */
+	void put(final int pos, final BaseSequence sequence) {
+		long reserved = reserve(pos, sequence);
+		if (reserved < 0) {
+			return;
+		}
+		Metrics.addBases(sequence.length());
+		Journal j = journal;
+		if (j != null) {
+			j.set(pos, sequence);
+		}
+		setSlot(pos, sequence);
+		bytes.addAndGet(-reserved);
+	}
+
+	/**
+	 * Replace every fragment at once, as loading a snapshot does. The budget is checked for all
+	 * of the new fragments before any fragment is replaced, so the list holds either all of them
+	 * or what it held before. They are not written to the journal one by one; the journal, if
+	 * there is one, is checkpointed once they are all stored instead.
+	 *
+	 * @param source the name of what the fragments are loaded from, for the messages.
+	 * @param positions the positions of the new fragments, in increasing order.
+	 * @param sequences the new fragments.
+	 * @throws IOException if the journal can not be checkpointed.
+	 */
+	void replaceAll(final String source, final int[] positions, final BaseSequence[] sequences) throws IOException {
+		long needed = 0;
+		for (int r = 0; r < positions.length; r++) {
+			if (positions[r] >= 0 && positions[r] < getSize()) {
+				needed += packedBytes(sequences[r]);
+			}
+		}
+		if (needed > budget) {
+			Diagnostics.report(Status.LOAD_OVER_BUDGET, source, needed, budget);
+			return;
+		}
+		clear();
+		for (int r = 0; r < positions.length; r++) {
+			if (isPositionValid(positions[r], "load")) {
+				Metrics.addBases(sequences[r].length());
+				setSlot(positions[r], sequences[r]);
+			}
+		}
+		Journal j = journal;
+		if (j != null) {
+			j.checkpoint();
+		}
+	}
+
+	/**
+	 * Free every position, without writing to the journal, giving the bases back to the intern
+	 * pool. Used when the list itself is thrown away or replaced as a whole.
+	 */
+	void clear() {
+		for (int pos = nextOccupied(0); pos >= 0; pos = nextOccupied(pos + 1)) {
+			setSlot(pos, new BaseSequence());
+		}
+	}
+
+	/**
+	 * Get the packed bytes of every stored fragment.
+	 *
+	 * @return the number of bytes, counted per position, whether or not fragments share bases.
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * Get the largest number of packed bytes the stored fragments may take.
+	 *
+	 * @return the budget in bytes, Long.MAX_VALUE if there is none.
+	 */
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Cap the packed bytes the stored fragments may take. Fragments already stored are kept
+	 * even if they go over it, only new bases that would grow the list further are rejected.
+	 *
+	 * @param budget the budget in bytes, Long.MAX_VALUE for none.
+	 */
+	public void setBudget(final long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Get the packed bytes of a sequence, in whole words as {@link PackedBases} stores them.
+	 *
+	 * @param sequence the sequence.
+	 * @return the number of bytes.
+	 */
+	static long packedBytes(final BaseSequence sequence) {
+		return packedBytes(sequence.length());
+	}
+
+	private static long packedBytes(final int length) {
+		long words = ((long) length + PackedBases.BASES_PER_WORD - 1) / PackedBases.BASES_PER_WORD;
+		return words * Long.BYTES;
+	}
+
+	/**
+	 * Reserve the bytes a sequence stored at a position adds to the list, so changes of other
+	 * positions made at the same time can not take them too. The reservation is given back once
+	 * the sequence is stored and counted.
+	 *
+	 * @param pos a valid position in the fragment list.
+	 * @param sequence the sequence to store.
+	 * @return the bytes reserved, or -1 if they would go over the budget.
+	 */
+	private long reserve(final int pos, final BaseSequence sequence) {
+		return reserve(pos, packedBytes(sequence) - packedBytes(slot(pos)));
+	}
+
+	/**
+	 * Reserve the bytes a change adds to the list, as {@link #reserve(int, BaseSequence)} does.
+	 *
+	 * @param pos the position the change is reported for.
+	 * @param growth the bytes the change adds, nothing is reserved if it is not positive.
+	 * @return the bytes reserved, or -1 if they would go over the budget.
+	 */
+	private long reserve(final int pos, final long growth) {
+		if (growth <= 0) {
+			return 0;
+		}
+		long used;
+		do {
+			used = bytes.get();
+			if (used + growth > budget) {
+				Diagnostics.report(Status.OVER_BUDGET, null, pos, budget);
+				return -1;
+			}
+		} while (!bytes.compareAndSet(used, used + growth));
+		return growth;
+	}
+
+	/**
+	 * Write a change to the journal, if there is one, before it is made.
+	 */
+	private void log(final byte op, final int... args) {
+		Journal j = journal;
+		if (j != null) {
+			j.log(op, args);
+		}
+	}
+
+	/**
+	 * Write every later change to a journal.
+	 *
+	 * @param journal the journal, or null to stop journaling.
+	 */
+	void attach(final Journal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Share the bases of every fragment through a pool, so equal fragments in this list and in
+	 * any other list using the same pool are stored once. The fragments already in the list are
+	 * added to the pool.
+	 *
+	 * @param pool the pool, for example {@link InternPool#SHARED}.
+	 */
+	void useInternPool(final InternPool pool) {
+		this.pool = pool;
+		for (int pos = nextOccupied(0); pos >= 0; pos = nextOccupied(pos + 1)) {
+			BaseSequence seq = fragments.get(pos);
+			fragments.set(pos, new BaseSequence(pool.intern(seq.rope()), seq.getType()));
+		}
+	}
+
+	/**
+	 * Store a sequence at a position. An empty sequence frees the position.
+	 *
+	 * @param pos a valid position in the fragment list.
+	 * @param sequence the sequence to store.
+	 */
+	void setSlot(final int pos, final BaseSequence sequence) {
+		BaseSequence stored = sequence.getType() == SequenceType.EMPTY ? null : sequence;
+		BaseSequence old = fragments.get(pos);
+		bytes.addAndGet((stored == null ? 0 : packedBytes(stored)) - (old == null ? 0 : packedBytes(old)));
+		if (pool != null) {
+			if (stored != null) {
+				stored = new BaseSequence(pool.intern(stored.rope()), stored.getType());
+			}
+			if (old != null) {
+				pool.release(old.rope());
+			}
+		}
+		fragments.set(pos, stored);
+		index.invalidate(pos);
+		if (!fmIndexes.isEmpty()) {
+			fmIndexes.remove(pos);
+		}
 	}
 	
+	/**
+	 * Check that every one of many positions is inside the list, with a single message if one
+	 * is not.
+	 *
+	 * @param positions the positions.
+	 * @param command the name of the change, for the message.
+	 * @return true if every position is valid.
+	 */
+	boolean arePositionsValid(final int[] positions, final String command) {
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int pos : positions) {
+			min = Math.min(min, pos);
+			max = Math.max(max, pos);
+		}
+		if (positions.length > 0 && (min < 0 || max >= this.size)) {
+			Diagnostics.report(Status.INVALID_POSITIONS, command, min, max, this.size - 1);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Check if a position is inside the list, without writing anything.
+	 *
+	 * @param pos the position.
+	 * @return {@link Status#OK}, or {@link Status#INVALID_POSITION} if it is outside of the list.
+	 */
+	public Status checkPosition(final int pos) {
+		return pos >= this.size || pos < 0 ? Status.INVALID_POSITION : Status.OK;
+	}
+
 	/**
 	 * 
 	 * @param pos
 	 * @param command
 	 * @return 
 	 */
-	private boolean isPositionValid(final int pos, final String command) {
-		if (pos >= this.size || pos < 0) {
-			System.out.print("Unable to " + command + " fragment at position "
-				+ pos + "." + CR + "Position must be between 0 and " + (this.size - 1) + "." + CR);
+	boolean isPositionValid(final int pos, final String command) {
+		if (checkPosition(pos) != Status.OK) {
+			Diagnostics.report(Status.INVALID_POSITION, command, pos, this.size - 1);
 			return false;
 		}
 		return true;
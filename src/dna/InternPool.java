@@ -0,0 +1,251 @@
+package cisc187.dna;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pool of ropes keyed by their contents, so fragment lists holding the same bases in several
+ * slots, or in several lists, keep a single copy of them.
+ * <p>
+ * A rope is found by its polynomial hash and length, and a rope with the same key is only taken
+ * as the same after its bases were compared, so two different sequences are never merged even
+ * if their hashes collide. Bases are compared in place, leaf by leaf, and outside the lock of
+ * the pool. Ropes in the pool are immutable, so sharing one between slots is safe and two slots
+ * holding equal sequences hold the same rope, which makes comparing them a pointer compare.
+ * </p>
+ * <p>
+ * Every rope counts the slots holding it. A rope no slot holds any more is kept in case the same
+ * bases are stored again, the least recently released being dropped first once the unheld ropes
+ * hold more than a budget of bases.
+ * </p>
+ */
+final class InternPool {
+
+	/**
+	 * The pool shared by every list that does not bring its own.
+	 */
+	static final InternPool SHARED = new InternPool(1 << 24);
+
+	/**
+	 * The ropes of every key, chained when different ropes share a key.
+	 */
+	private final Map<Long, Entry> entries = new HashMap<>();
+	private final long maxUnheldBases;
+	private long unheldBases;
+	private int size;
+	/**
+	 * The ropes no slot holds, the least recently released first.
+	 */
+	private Entry oldest;
+	private Entry newest;
+
+	/**
+	 * Create an empty pool.
+	 *
+	 * @param maxUnheldBases the number of bases of ropes no slot holds above which they are
+	 *     dropped.
+	 */
+	InternPool(final long maxUnheldBases) {
+		this.maxUnheldBases = maxUnheldBases;
+	}
+
+	/**
+	 * Get the pooled rope holding the same bases as a rope, adding the rope if there is none,
+	 * and count one more slot holding it.
+	 * <p>
+	 * The bases are compared without holding the lock of the pool, since pooled ropes never
+	 * change, so a long compare never holds up other lists. The pool is then locked again to
+	 * take the rope found, and looked up anew if it was dropped meanwhile or, when none was
+	 * found, if another rope with the same key was added.
+	 * </p>
+	 *
+	 * @param rope the rope to store in a slot.
+	 * @return the rope to store instead, equal to the given one.
+	 */
+	BaseRope intern(final BaseRope rope) {
+		if (rope.length() == 0) {
+			return BaseRope.EMPTY;
+		}
+		Long key = key(rope);
+		List<Entry> candidates = new ArrayList<>(1);
+		while (true) {
+			Entry first;
+			synchronized (this) {
+				first = entries.get(key);
+				for (Entry e = first; e != null; e = e.next) {
+					if (e.rope == rope) {
+						return hold(e);
+					}
+					if (e.rope.length() == rope.length()) {
+						candidates.add(e);
+					}
+				}
+			}
+			Entry found = null;
+			for (Entry e : candidates) {
+				if (BaseRope.sameBases(e.rope, rope)) {
+					found = e;
+					break;
+				}
+			}
+			candidates.clear();
+			synchronized (this) {
+				if (found != null && !found.dropped) {
+					return hold(found);
+				}
+				if (found == null && entries.get(key) == first) {
+					Entry added = new Entry(rope);
+					added.holders = 1;
+					added.next = first;
+					entries.put(key, added);
+					size++;
+					return rope;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Count one slot less holding a pooled rope.
+	 *
+	 * @param rope a rope returned by {@link #intern(BaseRope)}.
+	 */
+	synchronized void release(final BaseRope rope) {
+		if (rope.length() == 0) {
+			return;
+		}
+		for (Entry e = entries.get(key(rope)); e != null; e = e.next) {
+			if (e.rope == rope) {
+				if (--e.holders == 0) {
+					link(e);
+					evict();
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Get the number of distinct ropes in the pool.
+	 *
+	 * @return the number of ropes, held or not.
+	 */
+	synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Get the number of slots holding a rope with the same bases as a rope.
+	 *
+	 * @param rope the rope.
+	 * @return the number of slots, 0 if the pool has no such rope.
+	 */
+	synchronized int holders(final BaseRope rope) {
+		for (Entry e = entries.get(key(rope)); e != null; e = e.next) {
+			if (e.rope == rope) {
+				return e.holders;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Count one more slot holding a pooled rope.
+	 */
+	private BaseRope hold(final Entry e) {
+		if (e.holders++ == 0) {
+			unlink(e);
+		}
+		return e.rope;
+	}
+
+	private static Long key(final BaseRope rope) {
+		return rope.hash() * 31 + rope.length();
+	}
+
+	/**
+	 * Drop the least recently released ropes until the unheld ones are within budget.
+	 */
+	private void evict() {
+		while (unheldBases > maxUnheldBases && oldest != null) {
+			Entry e = oldest;
+			unlink(e);
+			Long key = key(e.rope);
+			Entry first = entries.get(key);
+			if (first == e) {
+				if (e.next == null) {
+					entries.remove(key);
+				} else {
+					entries.put(key, e.next);
+				}
+			} else {
+				Entry prev = first;
+				while (prev.next != e) {
+					prev = prev.next;
+				}
+				prev.next = e.next;
+			}
+			e.dropped = true;
+			size--;
+		}
+	}
+
+	/**
+	 * Add a rope to the end of the unheld ropes.
+	 */
+	private void link(final Entry e) {
+		e.older = newest;
+		e.newer = null;
+		if (newest == null) {
+			oldest = e;
+		} else {
+			newest.newer = e;
+		}
+		newest = e;
+		unheldBases += e.rope.length();
+	}
+
+	/**
+	 * Take a rope out of the unheld ropes.
+	 */
+	private void unlink(final Entry e) {
+		if (e.older == null) {
+			oldest = e.newer;
+		} else {
+			e.older.newer = e.newer;
+		}
+		if (e.newer == null) {
+			newest = e.older;
+		} else {
+			e.newer.older = e.older;
+		}
+		e.older = null;
+		e.newer = null;
+		unheldBases -= e.rope.length();
+	}
+
+	/**
+	 * A pooled rope and the number of slots holding it.
+	 */
+	private static final class Entry {
+
+		private final BaseRope rope;
+		private int holders;
+		/**
+		 * Set once the rope is dropped from the pool.
+		 */
+		private boolean dropped;
+		/**
+		 * The next rope with the same key.
+		 */
+		private Entry next;
+		private Entry older;
+		private Entry newer;
+
+		Entry(final BaseRope rope) {
+			this.rope = rope;
+		}
+	}
+}
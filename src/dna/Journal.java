@@ -0,0 +1,558 @@
+package cisc187.dna;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal of the changes made to a FragmentList, so the list can be recovered
+ * after a crash. Every change is written to the journal before it is made to the list.
+ * <p>
+ * The journal lives next to a snapshot of the list: recovering loads the snapshot and replays
+ * the journal on top of it, and a checkpoint saves a new snapshot and starts an empty journal.
+ * The journal starts with a header naming the snapshot it follows, by the checksum of the
+ * snapshot and its size, so a crash between saving a snapshot and starting its journal is
+ * noticed and the old journal, already part of the snapshot, is not replayed again.
+ * </p>
+ * <p>
+ * Records are small: an op code followed by zigzag varint arguments, and for a fragment that is
+ * set as a whole its bases packed 4 to a byte. A fragment mapped from a file is journaled as the
+ * file and region it was mapped from, not its bases, and mapped again on replay, so mapping a
+ * large file keeps it off the heap and the journal small; the file must then be left unchanged
+ * until the next checkpoint. Each record is framed by its length and a CRC-32, so a record torn
+ * by a crash ends the replay and is cut off.
+ * </p>
+ * <p>
+ * Records are committed in groups: they are gathered in a buffer that a background thread
+ * writes and forces to the disk every {@link #GROUP_MILLIS} milliseconds, or as soon as it fills
+ * up, so a single fsync covers every change made in that time. While one buffer is being written
+ * changes go to a second one, so a change never waits for the disk unless both are full. A crash
+ * loses at most the changes of the last group; {@link #sync()} forces them out at once.
+ * </p>
+ */
+final class Journal implements Closeable {
+
+	/**
+	 * The longest time a change waits before it is forced to the disk.
+	 */
+	static final long GROUP_MILLIS = 10;
+	/**
+	 * The size of journal after which a checkpoint is due.
+	 */
+	static final long CHECKPOINT_BYTES = 64L << 20;
+	static final String JOURNAL_SUFFIX = ".journal";
+	static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+	static final byte SET = 1;
+	static final byte REMOVE = 2;
+	static final byte CLIP = 3;
+	static final byte CLIP_TAIL = 4;
+	static final byte COPY = 5;
+	static final byte SWAP = 6;
+	static final byte TRANSCRIBE = 7;
+	static final byte REVERSE_COMPLEMENT = 8;
+	static final byte MAP = 9;
+
+	/**
+	 * The bytes {@code DNAJ} read as a little endian int.
+	 */
+	private static final int MAGIC = 0x4A414E44;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+	private static final int BUFFER_SIZE = 1 << 20;
+	/**
+	 * The most bytes the length of a record and its checksum add to it.
+	 */
+	private static final int FRAME_SIZE = 5 + 4;
+
+	private final FragmentList list;
+	private final Path journalFile;
+	private final Path snapshotFile;
+	private final ScheduledExecutorService syncer;
+	private final Runnable syncTask = new Runnable() {
+		@Override
+		public void run() {
+			syncQuietly();
+		}
+	};
+	/**
+	 * Held while a group is written, so groups reach the file in order. Taken before the lock
+	 * of the journal itself, never after it.
+	 */
+	private final Object writeLock = new Object();
+	private FileChannel channel;
+	/**
+	 * The group being gathered, and the buffer it is swapped with while it is written, null
+	 * while a group is being written.
+	 */
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	private ByteBuffer record = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+	private final CRC32 crc = new CRC32();
+	private long size;
+	private IOException failure;
+
+	private Journal(final FragmentList list, final Path prefix) {
+		this.list = list;
+		this.journalFile = Paths.get(prefix + JOURNAL_SUFFIX);
+		this.snapshotFile = Paths.get(prefix + SNAPSHOT_SUFFIX);
+		this.syncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				Thread thread = new Thread(r, "journal-sync");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Recover a list from the snapshot and journal with a prefix, then journal every later
+	 * change of the list. A missing snapshot or journal is taken as empty.
+	 *
+	 * @param prefix the path of the files without their suffix; the snapshot is
+	 *     {@code prefix.snapshot} and the journal {@code prefix.journal}.
+	 * @param list the list to recover, which should be empty.
+	 * @return the journal, attached to the list.
+	 * @throws IOException if the files can not be read or written.
+	 */
+	static Journal open(final Path prefix, final FragmentList list) throws IOException {
+		Journal journal = new Journal(list, prefix);
+		journal.recover();
+		list.attach(journal);
+		journal.syncer.scheduleWithFixedDelay(journal.syncTask, GROUP_MILLIS, GROUP_MILLIS, TimeUnit.MILLISECONDS);
+		return journal;
+	}
+
+	/**
+	 * Journal a fragment replaced as a whole.
+	 *
+	 * @param pos the position of the fragment.
+	 * @param seq the new fragment.
+	 */
+	synchronized void set(final int pos, final BaseSequence seq) {
+		PackedBases bases = seq.packed();
+		int length = bases.length();
+		begin(SET, 11 + (length + 3) / 4);
+		putInt(pos);
+		record.put((byte) seq.getType().ordinal());
+		putInt(length);
+		long[] words = bases.words();
+		for (int i = 0; i < length; i += 4) {
+			// 4 bases are the low byte of the word shifted down to them.
+			record.put((byte) (words[i >>> 5] >>> ((i & 31) << 1)));
+		}
+		end();
+	}
+
+	/**
+	 * Journal a fragment mapped from a region of a file, by the region rather than its bases.
+	 *
+	 * @param pos the position of the fragment.
+	 * @param type the sequenceType of the fragment.
+	 * @param file the mapped file.
+	 * @param offset the position of the first base in the file.
+	 * @param length the number of bases mapped.
+	 */
+	synchronized void map(final int pos, final SequenceType type, final Path file, final long offset, final long length) {
+		byte[] path = file.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+		begin(MAP, 5 + 1 + 10 + 10 + 5 + path.length);
+		putInt(pos);
+		record.put((byte) type.ordinal());
+		putLong(offset);
+		putLong(length);
+		putVarint(record, path.length);
+		record.put(path);
+		end();
+	}
+
+	/**
+	 * Journal a change made by one of the commands of {@link Editable}.
+	 *
+	 * @param op the op code of the change.
+	 * @param args the arguments of the change.
+	 */
+	synchronized void log(final byte op, final int... args) {
+		begin(op, 5 * args.length);
+		for (int arg : args) {
+			putInt(arg);
+		}
+		end();
+	}
+
+	/**
+	 * Check if the journal has grown enough for a checkpoint.
+	 *
+	 * @return true if a checkpoint is due.
+	 */
+	synchronized boolean needsCheckpoint() {
+		return size > CHECKPOINT_BYTES;
+	}
+
+	/**
+	 * Save a snapshot of the list and start an empty journal. No change may be made to the list
+	 * while the checkpoint runs.
+	 *
+	 * @throws IOException if the files can not be written.
+	 */
+	void checkpoint() throws IOException {
+		synchronized (writeLock) {
+			sync();
+			synchronized (this) {
+				list.save(snapshotFile);
+				// a crash from here on finds a journal that does not follow the snapshot, and
+				// does not replay it.
+				channel.close();
+				Path temp = Files.createTempFile(journalFile.toAbsolutePath().getParent(), "." + journalFile.getFileName() + "-", ".tmp");
+				try {
+					try (FileChannel fresh = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+						writeHeader(fresh);
+						fresh.force(true);
+					}
+					Files.move(temp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} finally {
+					Files.deleteIfExists(temp);
+				}
+				channel = FileChannel.open(journalFile, StandardOpenOption.WRITE);
+				channel.position(HEADER_SIZE);
+				size = HEADER_SIZE;
+			}
+		}
+	}
+
+	/**
+	 * Write every journaled change and force it to the disk.
+	 *
+	 * @throws IOException if the journal can not be written.
+	 */
+	void sync() throws IOException {
+		synchronized (writeLock) {
+			ByteBuffer group;
+			synchronized (this) {
+				if (failure != null) {
+					throw failure;
+				}
+				if (buffer.position() == 0) {
+					return;
+				}
+				group = buffer;
+				buffer = spare;
+				spare = null;
+			}
+			try {
+				group.flip();
+				while (group.hasRemaining()) {
+					channel.write(group);
+				}
+				channel.force(false);
+			} catch (IOException e) {
+				synchronized (this) {
+					failure = e;
+					notifyAll();
+				}
+				throw e;
+			}
+			group.clear();
+			synchronized (this) {
+				spare = group;
+				notifyAll();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		syncer.shutdown();
+		synchronized (writeLock) {
+			try {
+				sync();
+			} finally {
+				channel.close();
+				list.attach(null);
+			}
+		}
+	}
+
+	private void syncQuietly() {
+		synchronized (writeLock) {
+			if (!channel.isOpen()) {
+				return;
+			}
+			try {
+				sync();
+			} catch (IOException e) {
+				// kept in failure, and thrown at the next change.
+			}
+		}
+	}
+
+	/**
+	 * Start a record, making sure the record buffer has room for it.
+	 */
+	private void begin(final byte op, final int maxSize) {
+		if (failure != null) {
+			throw new UncheckedIOException(failure);
+		}
+		if (record.capacity() < maxSize + 1) {
+			record = ByteBuffer.allocate(maxSize + 1).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		record.clear();
+		record.put(op);
+	}
+
+	/**
+	 * Frame the record and add it to the group being gathered.
+	 */
+	private void end() {
+		record.flip();
+		int length = record.remaining();
+		reserve(length + FRAME_SIZE);
+		int start = buffer.position();
+		putVarint(buffer, length);
+		crc.reset();
+		crc.update(record.array(), 0, length);
+		buffer.put(record.array(), 0, length);
+		buffer.putInt((int) crc.getValue());
+		size += buffer.position() - start;
+	}
+
+	/**
+	 * Wait until the group being gathered has room for a number of bytes, having the full group
+	 * written out at once.
+	 */
+	private void reserve(final int needed) {
+		while (buffer.remaining() < needed) {
+			if (buffer.position() == 0) {
+				// a record larger than a whole group gets a group of its own.
+				buffer = ByteBuffer.allocate(needed).order(ByteOrder.LITTLE_ENDIAN);
+				return;
+			}
+			syncer.execute(syncTask);
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new UncheckedIOException(new InterruptedIOException("interrupted waiting for the journal"));
+			}
+			if (failure != null) {
+				throw new UncheckedIOException(failure);
+			}
+		}
+	}
+
+	private void putInt(final int value) {
+		putVarint(record, (value << 1) ^ (value >> 31));
+	}
+
+	private void putLong(final long value) {
+		long v = (value << 1) ^ (value >> 63);
+		while ((v & ~0x7FL) != 0) {
+			record.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		record.put((byte) v);
+	}
+
+	private static long getLong(final ByteBuffer in) {
+		long value = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			byte b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return (value >>> 1) ^ -(value & 1);
+			}
+		}
+		throw new IllegalArgumentException("varint too long");
+	}
+
+	private static void putVarint(final ByteBuffer out, final int value) {
+		int v = value;
+		while ((v & ~0x7F) != 0) {
+			out.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.put((byte) v);
+	}
+
+	private static int getVarint(final ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("varint too long");
+	}
+
+	private static int getInt(final ByteBuffer in) {
+		int v = getVarint(in);
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/**
+	 * Write the header naming the snapshot the journal follows, by its checksum and size.
+	 */
+	private void writeHeader(final FileChannel out) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putLong(Snapshot.checksum(snapshotFile)).putLong(Snapshot.size(snapshotFile));
+		header.flip();
+		while (header.hasRemaining()) {
+			out.write(header, header.position());
+		}
+	}
+
+	/**
+	 * Load the snapshot, replay the journal written after it and cut off a torn last record.
+	 */
+	private void recover() throws IOException {
+		if (Files.exists(snapshotFile)) {
+			list.load(snapshotFile);
+		}
+		long end = HEADER_SIZE;
+		boolean replay = false;
+		if (Files.exists(journalFile)) {
+			try (FileChannel in = FileChannel.open(journalFile, StandardOpenOption.READ)) {
+				if (in.size() >= HEADER_SIZE) {
+					ByteBuffer header = in.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+					replay = header.getInt() == MAGIC && header.getInt() == VERSION
+						&& header.getLong() == Snapshot.checksum(snapshotFile) && header.getLong() == Snapshot.size(snapshotFile);
+				}
+				if (replay) {
+					end = HEADER_SIZE + replay(in.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, in.size() - HEADER_SIZE));
+				}
+			}
+		}
+		if (replay) {
+			channel = FileChannel.open(journalFile, StandardOpenOption.WRITE);
+			channel.truncate(end);
+			channel.position(end);
+		} else {
+			// no journal, or the journal of an older snapshot that already holds its changes.
+			channel = FileChannel.open(journalFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+			writeHeader(channel);
+			channel.position(HEADER_SIZE);
+			channel.force(true);
+		}
+		size = end;
+	}
+
+	/**
+	 * Apply every whole record to the list, without printing any message. Rejections go to
+	 * {@link Diagnostics#SILENT} meanwhile, since a sink such as {@link AsyncDiagnostics} does
+	 * not write to the console.
+	 *
+	 * @return the number of bytes holding whole records.
+	 */
+	private int replay(final ByteBuffer records) {
+		records.order(ByteOrder.LITTLE_ENDIAN);
+		Console.redirect(new PrintStream(new OutputStream() {
+			@Override
+			public void write(final int b) {
+			}
+		}));
+		Diagnostics.Sink sink = Diagnostics.sink();
+		Diagnostics.use(Diagnostics.SILENT);
+		int good = 0;
+		try {
+			while (records.hasRemaining()) {
+				int length = getVarint(records);
+				if (length <= 0 || records.remaining() < length + 4) {
+					break;
+				}
+				ByteBuffer payload = records.slice();
+				payload.limit(length);
+				payload.order(ByteOrder.LITTLE_ENDIAN);
+				records.position(records.position() + length);
+				crc.reset();
+				crc.update(payload.duplicate());
+				if ((int) crc.getValue() != records.getInt()) {
+					break;
+				}
+				apply(payload);
+				good = records.position();
+			}
+		} catch (RuntimeException e) {
+			// a torn record, the records before it are kept.
+		} finally {
+			Diagnostics.use(sink);
+			Console.restore();
+		}
+		return good;
+	}
+
+	private void apply(final ByteBuffer in) {
+		byte op = in.get();
+		switch (op) {
+			case SET:
+				int pos = getInt(in);
+				SequenceType type = SequenceType.values()[in.get()];
+				int length = getInt(in);
+				PackedBases bases = new PackedBases(length);
+				for (int i = 0; i < length; i += 4) {
+					int b = in.get() & 0xFF;
+					for (int j = 0; j < 4 && i + j < length; j++) {
+						bases.append((b >>> (2 * j)) & PackedBases.CODE_MASK);
+					}
+				}
+				if (list.isPositionValid(pos, "insert")) {
+					list.setSlot(pos, type == SequenceType.EMPTY ? new BaseSequence() : new BaseSequence(bases, type));
+				}
+				break;
+			case REMOVE:
+				list.remove(getInt(in));
+				break;
+			case CLIP:
+				list.clip(getInt(in), getInt(in), getInt(in));
+				break;
+			case CLIP_TAIL:
+				list.clip(getInt(in), getInt(in));
+				break;
+			case COPY:
+				list.copy(getInt(in), getInt(in));
+				break;
+			case SWAP:
+				list.swap(getInt(in), getInt(in), getInt(in), getInt(in));
+				break;
+			case TRANSCRIBE:
+				list.transcribe(getInt(in));
+				break;
+			case REVERSE_COMPLEMENT:
+				list.reverseComplement(getInt(in));
+				break;
+			case MAP:
+				int mapPos = getInt(in);
+				SequenceType mapType = SequenceType.values()[in.get()];
+				long offset = getLong(in);
+				long mapLength = getLong(in);
+				byte[] path = new byte[getVarint(in)];
+				in.get(path);
+				try {
+					list.map(mapPos, mapType, Paths.get(new String(path, StandardCharsets.UTF_8)), offset, mapLength);
+				} catch (IOException e) {
+					// the file is gone, the position keeps what it held before.
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("unknown op " + op);
+		}
+	}
+}
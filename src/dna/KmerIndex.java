@@ -0,0 +1,544 @@
+package cisc187.dna;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An index of every k-mer, a run of {@link #K} bases, in the fragments of a FragmentList.
+ * <p>
+ * Every k-mer is packed into a long key, 2 bits per base like the fragments themselves. There
+ * are only 4<sup>K</sup> keys, so a key is used directly as the number of its posting list
+ * instead of being hashed. A posting is a long holding the indexed
+ * fragment in its high 32 bits and the offset of the k-mer in its low 32 bits. All postings are
+ * kept in one flat array, each list being chained through a parallel array of links, so the
+ * index holds no object per k-mer or per posting. A search looks up
+ * the rarest k-mer of the pattern and checks the whole pattern only at the places that k-mer
+ * occurs. A pattern shorter than a k-mer is the start of every k-mer that extends it, so it is
+ * found by walking the lists of all of those k-mers, plus a scan of the last few bases of every
+ * fragment, where no k-mer starts.
+ * </p>
+ * <p>
+ * The index is kept up to date incrementally: a changed position is only marked, and it is
+ * brought up to date at the next search, so editing costs nothing until the index is used. The
+ * index keeps the rope each fragment held when it was last indexed, not a copy of its bases,
+ * and a changed fragment is compared with it in place to find the bases both start and end
+ * with. Only the k-mers overlapping the bases in between are dropped and indexed again, so
+ * clipping or swapping the tail of a long fragment costs about as much as the bases it moves.
+ * </p>
+ * <p>
+ * A posting holds the offset its k-mer had when it was posted. Every fragment keeps the pieces
+ * its postings were cut into by later edits, each a range of those offsets and how far its
+ * k-mers have moved since, so the k-mers after an edit are moved by changing one number instead
+ * of their postings. Postings of k-mers that were dropped, or of fragments that are no longer in
+ * the list, are in no piece and skipped by searches; they are removed once they outnumber the
+ * live ones, which also joins the pieces of every fragment back into one.
+ * </p>
+ */
+final class KmerIndex {
+
+	/**
+	 * The number of bases in a k-mer.
+	 */
+	static final int K = 10;
+	/**
+	 * The number of dead postings below which they are never dropped.
+	 */
+	private static final long MIN_DEAD = 1 << 16;
+
+	private static final int END = -1;
+
+	/**
+	 * The number of posting lists, one per k-mer.
+	 */
+	private static final int LISTS = 1 << (2 * K);
+
+	/**
+	 * The first posting of every list, allocated at the first search.
+	 */
+	private int[] heads;
+	private int[] counts;
+	private long[] postings = new long[16];
+	/**
+	 * The posting after every posting in its list, or {@link #END}.
+	 */
+	private int[] links = new int[16];
+	private int postingCount;
+
+	/**
+	 * The number of pieces of a fragment above which it is indexed again as a whole, which
+	 * keeps finding the piece of a posting quick.
+	 */
+	private static final int MAX_PIECES = 64;
+
+	/**
+	 * The indexed fragment of every position: position to fragment number.
+	 */
+	private LongIntMap fragmentOf = new LongIntMap();
+	/**
+	 * The rope every indexed fragment held when it was last indexed, null once the fragment
+	 * left the list.
+	 */
+	private BaseRope[] texts = new BaseRope[16];
+	private SequenceType[] types = new SequenceType[16];
+	private int[] positions = new int[16];
+	/**
+	 * The pieces of every fragment, in order of the offsets they were posted at: the first
+	 * posted offset, the offset after the last one and how far the k-mers moved since. Together
+	 * the pieces hold every k-mer of the fragment exactly once.
+	 */
+	private int[][] pieces = new int[16][];
+	private int[] pieceCounts = new int[16];
+	/**
+	 * The offset the next k-mers posted for every fragment get, above those of all its pieces.
+	 */
+	private int[] nextOffsets = new int[16];
+	private int fragmentCount;
+	private final Kmers kmers = new Kmers();
+
+	private long livePostings;
+	private long deadPostings;
+	private final BitSet changed = new BitSet();
+
+	/**
+	 * Mark a position of the list as changed, so it is indexed again before the next search.
+	 *
+	 * @param pos the position that changed.
+	 */
+	synchronized void invalidate(final int pos) {
+		changed.set(pos);
+	}
+
+	/**
+	 * Find every place a pattern occurs in the fragments of a list.
+	 *
+	 * @param list the list this index belongs to.
+	 * @param type the sequenceType of the fragments to search.
+	 * @param pattern the bases to find, at least one.
+	 * @return the places the pattern was found, each the position of its fragment in the high
+	 *     32 bits and the offset in the fragment in the low 32 bits, in increasing order.
+	 */
+	synchronized long[] search(final FragmentList list, final SequenceType type, final PackedBases pattern) {
+		if (heads == null) {
+			heads = new int[LISTS];
+			counts = new int[LISTS];
+			Arrays.fill(heads, END);
+		}
+		refresh(list);
+		long[] found = pattern.length() < K ? prefixes(type, pattern) : lookup(type, pattern);
+		Arrays.sort(found);
+		return found;
+	}
+
+	/**
+	 * Index the positions that changed since the last search.
+	 */
+	private void refresh(final FragmentList list) {
+		for (int pos = changed.nextSetBit(0); pos >= 0; pos = changed.nextSetBit(pos + 1)) {
+			BaseSequence seq = list.slot(pos);
+			BaseRope rope = seq.getType() == SequenceType.EMPTY ? null : seq.rope();
+			int fragment = fragmentOf.get(pos);
+			if (fragment != LongIntMap.MISSING && texts[fragment] != null) {
+				if (rope != null && types[fragment] == seq.getType()) {
+					update(fragment, rope);
+					continue;
+				}
+				drop(fragment);
+			}
+			if (rope != null) {
+				add(pos, seq.getType(), rope);
+			}
+		}
+		changed.clear();
+		if (deadPostings > livePostings && deadPostings > MIN_DEAD) {
+			compact();
+		}
+	}
+
+	private long[] lookup(final SequenceType type, final PackedBases pattern) {
+		// pick the k-mer of the pattern with the fewest postings.
+		int best = -1;
+		int shortest = Integer.MAX_VALUE;
+		int shift = 0;
+		long kmer = 0;
+		for (int i = 0; i < pattern.length(); i++) {
+			kmer = next(kmer, pattern.code(i));
+			if (i >= K - 1) {
+				int id = (int) kmer;
+				if (counts[id] == 0) {
+					return new long[0];
+				}
+				if (counts[id] < shortest) {
+					shortest = counts[id];
+					best = id;
+					// the pattern starts this many bases before the k-mer.
+					shift = i - K + 1;
+				}
+			}
+		}
+		long[] found = new long[shortest];
+		int n = 0;
+		for (int p = heads[best]; p != END; p = links[p]) {
+			int fragment = (int) (postings[p] >>> 32);
+			if (texts[fragment] == null || types[fragment] != type) {
+				continue;
+			}
+			int start = offset(fragment, (int) postings[p]) - shift;
+			if (start >= 0 && matches(texts[fragment], start, pattern)) {
+				found[n++] = ((long) positions[fragment] << 32) | start;
+			}
+		}
+		return Arrays.copyOf(found, n);
+	}
+
+	private long[] prefixes(final SequenceType type, final PackedBases pattern) {
+		int length = pattern.length();
+		long prefix = 0;
+		for (int i = length - 1; i >= 0; i--) {
+			prefix = (prefix << 2) | pattern.code(i);
+		}
+		long[] found = new long[16];
+		int n = 0;
+		// the pattern is in the low bits of a k-mer, the bases extending it in the high bits.
+		for (long rest = 0; rest < 1L << (2 * (K - length)); rest++) {
+			int id = (int) (prefix | (rest << (2 * length)));
+			if (counts[id] == 0) {
+				continue;
+			}
+			for (int p = heads[id]; p != END; p = links[p]) {
+				int fragment = (int) (postings[p] >>> 32);
+				if (texts[fragment] == null || types[fragment] != type) {
+					continue;
+				}
+				int start = offset(fragment, (int) postings[p]);
+				if (start >= 0) {
+					if (n == found.length) {
+						found = Arrays.copyOf(found, n * 2);
+					}
+					found[n++] = ((long) positions[fragment] << 32) | start;
+				}
+			}
+		}
+		for (int f = 0; f < fragmentCount; f++) {
+			BaseRope text = texts[f];
+			if (text == null || types[f] != type) {
+				continue;
+			}
+			for (int start = Math.max(0, text.length() - K + 1); start + length <= text.length(); start++) {
+				if (matches(text, start, pattern)) {
+					if (n == found.length) {
+						found = Arrays.copyOf(found, n * 2);
+					}
+					found[n++] = ((long) positions[f] << 32) | start;
+				}
+			}
+		}
+		return Arrays.copyOf(found, n);
+	}
+
+	/**
+	 * Check if a pattern occurs in a text at an offset, comparing 32 bases at a time in place.
+	 */
+	private static boolean matches(final BaseRope text, final int start, final PackedBases pattern) {
+		int length = pattern.length();
+		if (start + length > text.length()) {
+			return false;
+		}
+		long[] words = pattern.words();
+		for (int i = 0; i < length; i += PackedBases.BASES_PER_WORD) {
+			int count = Math.min(PackedBases.BASES_PER_WORD, length - i);
+			long mask = count == PackedBases.BASES_PER_WORD ? -1L : (1L << (2 * count)) - 1;
+			if (((text.word(start + i, count) ^ words[i >>> 5]) & mask) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Shift a base into a k-mer, dropping its first base. The first base of a k-mer is in its
+	 * lowest bits, so the k-mer never holds more than 2 * K bits.
+	 */
+	private static long next(final long kmer, final int code) {
+		return (kmer >>> 2) | ((long) code << (2 * (K - 1)));
+	}
+
+	/**
+	 * Index a fragment at a position as a whole.
+	 */
+	private void add(final int pos, final SequenceType type, final BaseRope rope) {
+		if (fragmentCount == texts.length) {
+			int capacity = fragmentCount * 2;
+			texts = Arrays.copyOf(texts, capacity);
+			types = Arrays.copyOf(types, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+			pieces = Arrays.copyOf(pieces, capacity);
+			pieceCounts = Arrays.copyOf(pieceCounts, capacity);
+			nextOffsets = Arrays.copyOf(nextOffsets, capacity);
+		}
+		int fragment = fragmentCount++;
+		texts[fragment] = rope;
+		types[fragment] = type;
+		positions[fragment] = pos;
+		pieces[fragment] = new int[3 * 4];
+		pieceCounts[fragment] = 0;
+		nextOffsets[fragment] = 0;
+		fragmentOf.put(pos, fragment);
+		post(fragment, rope, 0, kmers(rope));
+	}
+
+	/**
+	 * Bring the postings of a fragment up to date with the rope it holds now. The k-mers
+	 * before the first changed base are kept, those after the last one are moved, and only
+	 * those in between are dropped and posted again.
+	 */
+	private void update(final int fragment, final BaseRope rope) {
+		BaseRope old = texts[fragment];
+		if (old == rope) {
+			return;
+		}
+		int prefix = BaseRope.commonPrefix(old, rope);
+		int suffix = BaseRope.commonSuffix(old, rope, Math.min(old.length(), rope.length()) - prefix);
+		int from = Math.max(0, prefix - K + 1);
+		int oldTo = Math.max(from, Math.min(old.length() - suffix, kmers(old)));
+		int newTo = Math.max(from, Math.min(rope.length() - suffix, kmers(rope)));
+		if (from == oldTo && from == newTo) {
+			texts[fragment] = rope;
+			return;
+		}
+		if (pieceCounts[fragment] + 2 > MAX_PIECES || nextOffsets[fragment] > Integer.MAX_VALUE - (newTo - from)) {
+			SequenceType type = types[fragment];
+			drop(fragment);
+			add(positions[fragment], type, rope);
+			return;
+		}
+		// the k-mers starting from the first changed one to the first unchanged one after it.
+		uncount(old, from, oldTo);
+		cut(fragment, from, oldTo, newTo - oldTo);
+		texts[fragment] = rope;
+		post(fragment, rope, from, newTo);
+	}
+
+	/**
+	 * Drop the k-mers starting in a range of a fragment from its pieces and move those after
+	 * the range.
+	 *
+	 * @param from the first dropped k-mer, as the fragment is indexed now.
+	 * @param to the k-mer after the last dropped one.
+	 * @param moved how far the k-mers after the range move.
+	 */
+	private void cut(final int fragment, final int from, final int to, final int moved) {
+		int[] old = pieces[fragment];
+		int count = pieceCounts[fragment];
+		int[] cut = new int[Math.max(old.length, 3 * (count + 2))];
+		int n = 0;
+		for (int i = 0; i < 3 * count; i += 3) {
+			int first = old[i];
+			int end = old[i + 1];
+			int shift = old[i + 2];
+			// the part of the piece before the range, then the part after it.
+			int before = Math.min(end, from - shift);
+			if (before > first) {
+				cut[n++] = first;
+				cut[n++] = before;
+				cut[n++] = shift;
+			}
+			int after = Math.max(first, to - shift);
+			if (end > after) {
+				cut[n++] = after;
+				cut[n++] = end;
+				cut[n++] = shift + moved;
+			}
+		}
+		pieces[fragment] = cut;
+		pieceCounts[fragment] = n / 3;
+	}
+
+	/**
+	 * Get where the k-mer of a posting starts in its fragment now.
+	 *
+	 * @return the offset, or -1 if the k-mer was dropped.
+	 */
+	private int offset(final int fragment, final int posted) {
+		int[] piece = pieces[fragment];
+		int low = 0;
+		int high = pieceCounts[fragment] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (posted < piece[3 * mid]) {
+				high = mid - 1;
+			} else if (posted >= piece[3 * mid + 1]) {
+				low = mid + 1;
+			} else {
+				return posted + piece[3 * mid + 2];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Post the k-mers starting in a range of a fragment as a new piece.
+	 */
+	private void post(final int fragment, final BaseRope rope, final int from, final int to) {
+		if (to <= from) {
+			return;
+		}
+		int first = nextOffsets[fragment];
+		int[] piece = pieces[fragment];
+		int n = 3 * pieceCounts[fragment];
+		if (n == piece.length) {
+			piece = Arrays.copyOf(piece, 2 * n);
+			pieces[fragment] = piece;
+		}
+		piece[n] = first;
+		piece[n + 1] = first + (to - from);
+		piece[n + 2] = from - first;
+		pieceCounts[fragment]++;
+		nextOffsets[fragment] = first + (to - from);
+		kmers.start(rope, from);
+		for (int i = from; i < to; i++) {
+			post(kmers.next(), ((long) fragment << 32) | (first + i - from));
+		}
+		livePostings += to - from;
+	}
+
+	private void post(final long kmer, final long posting) {
+		int id = (int) kmer;
+		if (postingCount == postings.length) {
+			postings = Arrays.copyOf(postings, postingCount * 2);
+			links = Arrays.copyOf(links, postingCount * 2);
+		}
+		postings[postingCount] = posting;
+		links[postingCount] = heads[id];
+		heads[id] = postingCount++;
+		counts[id]++;
+	}
+
+	/**
+	 * Take the k-mers starting in a range of a rope out of the counts. Their postings stay in
+	 * their lists until the next compaction, only the counts are exact.
+	 */
+	private void uncount(final BaseRope rope, final int from, final int to) {
+		if (to <= from) {
+			return;
+		}
+		kmers.start(rope, from);
+		for (int i = from; i < to; i++) {
+			counts[(int) kmers.next()]--;
+		}
+		livePostings -= to - from;
+		deadPostings += to - from;
+	}
+
+	private void drop(final int fragment) {
+		BaseRope text = texts[fragment];
+		uncount(text, 0, kmers(text));
+		texts[fragment] = null;
+		types[fragment] = null;
+		pieces[fragment] = null;
+		pieceCounts[fragment] = 0;
+	}
+
+	/**
+	 * Drop the postings of k-mers and fragments that left the list, number the remaining
+	 * fragments from zero again and join the pieces of each back into one.
+	 */
+	private void compact() {
+		int[] renumbered = new int[fragmentCount];
+		int live = 0;
+		for (int f = 0; f < fragmentCount; f++) {
+			renumbered[f] = texts[f] == null ? LongIntMap.MISSING : live++;
+		}
+		// a posting only ever links to an earlier one, so one pass in order moves every live
+		// posting down and finds, for a dead one, the live posting its list continues with.
+		int[] moved = new int[postingCount];
+		int n = 0;
+		for (int p = 0; p < postingCount; p++) {
+			int link = links[p] == END ? END : moved[links[p]];
+			int fragment = (int) (postings[p] >>> 32);
+			int offset = renumbered[fragment] == LongIntMap.MISSING ? -1 : offset(fragment, (int) postings[p]);
+			if (offset < 0) {
+				moved[p] = link;
+				continue;
+			}
+			postings[n] = ((long) renumbered[fragment] << 32) | offset;
+			links[n] = link;
+			moved[p] = n++;
+		}
+		for (int id = 0; id < LISTS; id++) {
+			if (heads[id] != END) {
+				heads[id] = moved[heads[id]];
+			}
+		}
+		postingCount = n;
+		deadPostings = 0;
+		fragmentOf = new LongIntMap();
+		for (int f = 0; f < fragmentCount; f++) {
+			int to = renumbered[f];
+			if (to == LongIntMap.MISSING) {
+				continue;
+			}
+			int count = kmers(texts[f]);
+			texts[to] = texts[f];
+			types[to] = types[f];
+			positions[to] = positions[f];
+			pieces[to] = new int[] {0, count, 0};
+			pieceCounts[to] = count == 0 ? 0 : 1;
+			nextOffsets[to] = count;
+			fragmentOf.put(positions[to], to);
+		}
+		Arrays.fill(texts, live, fragmentCount, null);
+		Arrays.fill(types, live, fragmentCount, null);
+		Arrays.fill(pieces, live, fragmentCount, null);
+		fragmentCount = live;
+	}
+
+	private static int kmers(final BaseRope rope) {
+		return Math.max(0, rope.length() - K + 1);
+	}
+
+	/**
+	 * Reads the k-mers of a rope one after the other, taking its bases from the rope a word at
+	 * a time.
+	 */
+	private static final class Kmers {
+
+		private BaseRope rope;
+		private int pos;
+		private long word;
+		private int left;
+		private long kmer;
+
+		/**
+		 * Start reading at the k-mer starting at an offset.
+		 */
+		void start(final BaseRope from, final int offset) {
+			rope = from;
+			pos = offset;
+			left = 0;
+			kmer = 0;
+			for (int i = 0; i < K - 1; i++) {
+				kmer = KmerIndex.next(kmer, code());
+			}
+		}
+
+		/**
+		 * Get the next k-mer.
+		 */
+		long next() {
+			kmer = KmerIndex.next(kmer, code());
+			return kmer;
+		}
+
+		private int code() {
+			if (left == 0) {
+				left = Math.min(PackedBases.BASES_PER_WORD, rope.length() - pos);
+				word = rope.word(pos, left);
+				pos += left;
+			}
+			left--;
+			int code = (int) word & PackedBases.CODE_MASK;
+			word >>>= 2;
+			return code;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package cisc187.dna;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds, recorded without locks from any number of threads.
+ * <p>
+ * Like HdrHistogram, values are counted in buckets whose width grows with the value, so every
+ * value is kept within 1% of its true value over the whole range: the values below
+ * 2<sup>{@link #SUB_BITS}</sup> have a bucket each, and every later doubling of the value is cut
+ * into 2<sup>{@link #SUB_BITS}-1</sup> buckets, so a bucket is never wider than 1/128 of the
+ * values it holds. A value is counted with a single atomic increment
+ * of its bucket, found with a few shifts.
+ * </p>
+ */
+final class LatencyHistogram {
+
+	/**
+	 * The bits of precision kept of every value.
+	 */
+	static final int SUB_BITS = 8;
+	/**
+	 * The largest value counted, larger ones are counted as this one: about 18 minutes.
+	 */
+	static final long MAX_VALUE = (1L << 40) - 1;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int HALF = SUB_COUNT / 2;
+
+	private final AtomicLongArray counts = new AtomicLongArray(index(MAX_VALUE) + 1);
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Count a value.
+	 *
+	 * @param value the value, negative values are counted as 0.
+	 */
+	void record(final long value) {
+		long v = Math.min(Math.max(value, 0), MAX_VALUE);
+		counts.incrementAndGet(index(v));
+		long m = max.get();
+		while (v > m && !max.compareAndSet(m, v)) {
+			m = max.get();
+		}
+	}
+
+	/**
+	 * Get the number of values counted.
+	 *
+	 * @return the number of values.
+	 */
+	long count() {
+		long total = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * Get the largest value counted.
+	 *
+	 * @return the largest value, 0 if none was counted.
+	 */
+	long max() {
+		return max.get();
+	}
+
+	/**
+	 * Get the value below or at which a fraction of the values are.
+	 *
+	 * @param fraction the fraction of values, for example 0.99.
+	 * @return the highest value of the bucket holding the value at that fraction, 0 if no
+	 *     value was counted.
+	 */
+	long percentile(final double fraction) {
+		long[] snapshot = new long[counts.length()];
+		long total = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(highest(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Forget every value.
+	 */
+	void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		max.set(0);
+	}
+
+	/**
+	 * Find the bucket of a value: bucket {@code b} of a doubling holds the values whose top
+	 * {@link #SUB_BITS} bits, shifted down by {@code b}, are the same.
+	 */
+	private static int index(final long value) {
+		int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+		return shift * HALF + (int) (value >>> shift);
+	}
+
+	/**
+	 * Get the highest value counted in a bucket.
+	 */
+	private static long highest(final int index) {
+		if (index < SUB_COUNT) {
+			return index;
+		}
+		int shift = index / HALF - 1;
+		long sub = index - (long) shift * HALF;
+		return ((sub + 1) << shift) - 1;
+	}
+}
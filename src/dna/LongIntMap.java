@@ -0,0 +1,110 @@
+package cisc187.dna;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from long keys to int values that stores both in primitive arrays, so there is no
+ * boxing and no entry object per mapping. Collisions are resolved by linear probing in a table
+ * that is kept at most half full. Mappings can not be removed, but a value may be overwritten.
+ */
+final class LongIntMap {
+
+	/**
+	 * The value returned for a key that is not mapped.
+	 */
+	static final int MISSING = -1;
+	/**
+	 * Marks a free cell of the table, so it can not be used as a key.
+	 */
+	private static final long FREE = Long.MIN_VALUE;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+
+	/**
+	 * Create an empty map.
+	 */
+	LongIntMap() {
+		keys = new long[INITIAL_CAPACITY];
+		values = new int[INITIAL_CAPACITY];
+		Arrays.fill(keys, FREE);
+	}
+
+	/**
+	 * Get the number of keys mapped.
+	 *
+	 * @return the number of keys.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Get the value mapped to a key.
+	 *
+	 * @param key the key, anything but {@link Long#MIN_VALUE}.
+	 * @return the value, or {@link #MISSING} if the key is not mapped.
+	 */
+	int get(final long key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; keys[i] != FREE; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return values[i];
+			}
+		}
+		return MISSING;
+	}
+
+	/**
+	 * Map a key to a value, replacing the value it was mapped to.
+	 *
+	 * @param key the key, anything but {@link Long#MIN_VALUE}.
+	 * @param value the value.
+	 */
+	void put(final long key, final int value) {
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (keys[i] != FREE) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size > keys.length >>> 1) {
+			grow();
+		}
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldKeys.length * 2];
+		Arrays.fill(keys, FREE);
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] != FREE) {
+				int i = hash(oldKeys[j]) & mask;
+				while (keys[i] != FREE) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	/**
+	 * Spread the bits of a key, so keys that differ only in their high bits still land in
+	 * different cells.
+	 */
+	private static int hash(final long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
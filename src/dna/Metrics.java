@@ -0,0 +1,227 @@
+package cisc187.dna;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts how often every command runs and how long it takes, the bases it works on and the
+ * bytes it allocates, so the time of a run can be told apart by command.
+ * <p>
+ * Latencies go to a {@link LatencyHistogram} per command and the other numbers to LongAdders,
+ * so commands running on different threads record without waiting for each other. The bases a
+ * command works on are added up by the fragment list, in a counter of the running thread, with
+ * {@link #addBases(long)}. Allocated bytes are read from the JVM's count of the bytes allocated
+ * by the running thread, where the JVM keeps one.
+ * </p>
+ */
+final class Metrics implements MetricsMXBean {
+
+	/**
+	 * The name the metrics are registered under with the platform MBean server.
+	 */
+	static final String OBJECT_NAME = "cisc187.dna:type=Metrics";
+	private static final String CR = System.lineSeparator();
+	private static final Command[] COMMANDS = Command.values();
+	/**
+	 * The bases worked on by the current thread so far.
+	 */
+	private static final ThreadLocal<long[]> BASES = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+	/**
+	 * The JVM's count of allocated bytes, or null if the JVM does not keep one.
+	 */
+	private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocations();
+
+	private final LatencyHistogram[] latencies = new LatencyHistogram[COMMANDS.length];
+	private final LongAdder[] bases = new LongAdder[COMMANDS.length];
+	private final LongAdder[] bytes = new LongAdder[COMMANDS.length];
+
+	/**
+	 * Create metrics with nothing recorded.
+	 */
+	Metrics() {
+		for (int c = 0; c < COMMANDS.length; c++) {
+			latencies[c] = new LatencyHistogram();
+			bases[c] = new LongAdder();
+			bytes[c] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Count bases worked on by the command running on the current thread.
+	 *
+	 * @param count the number of bases.
+	 */
+	static void addBases(final long count) {
+		BASES.get()[0] += count;
+	}
+
+	/**
+	 * Wrap the work of a command so every run of it is recorded.
+	 *
+	 * @param command the command.
+	 * @param action the work of the command.
+	 * @return the work, recording its runs.
+	 */
+	Runnable measure(final Command command, final Runnable action) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				long[] counted = BASES.get();
+				long basesBefore = counted[0];
+				long bytesBefore = allocatedBytes();
+				long start = System.nanoTime();
+				try {
+					action.run();
+				} finally {
+					long nanos = System.nanoTime() - start;
+					long allocated = bytesBefore < 0 ? 0 : allocatedBytes() - bytesBefore;
+					record(command, nanos, counted[0] - basesBefore, allocated);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Record one run of a command.
+	 *
+	 * @param command the command.
+	 * @param nanos the time it took.
+	 * @param baseCount the bases it worked on.
+	 * @param allocated the bytes it allocated.
+	 */
+	void record(final Command command, final long nanos, final long baseCount, final long allocated) {
+		int c = command.ordinal();
+		latencies[c].record(nanos);
+		bases[c].add(baseCount);
+		bytes[c].add(allocated);
+	}
+
+	/**
+	 * Print a line for every command that ran: its count, its latency percentiles and largest
+	 * latency in microseconds, the bases it worked on and the bytes it allocated per run.
+	 *
+	 * @param out where to print the lines.
+	 * @throws IOException if out can not be written.
+	 */
+	void print(final Appendable out) throws IOException {
+		out.append(String.format(Locale.ROOT, "%-12s %10s %10s %10s %10s %10s %14s %10s%n",
+			"command", "count", "p50 us", "p99 us", "p99.9 us", "max us", "bases", "bytes/op"));
+		for (int c = 0; c < COMMANDS.length; c++) {
+			LatencyHistogram h = latencies[c];
+			long count = h.count();
+			if (count == 0) {
+				continue;
+			}
+			out.append(String.format(Locale.ROOT, "%-12s %10d %10.1f %10.1f %10.1f %10.1f %14d %10d%n",
+				COMMANDS[c].keyword(), count, micros(h.percentile(0.5)), micros(h.percentile(0.99)),
+				micros(h.percentile(0.999)), micros(h.max()), bases[c].sum(), bytes[c].sum() / count));
+		}
+	}
+
+	/**
+	 * Register these metrics with the platform MBean server, replacing metrics registered
+	 * before.
+	 *
+	 * @throws JMException if the metrics can not be registered.
+	 */
+	void register() throws JMException {
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		}
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+	}
+
+	@Override
+	public Map<String, Long> getCounts() {
+		Map<String, Long> counts = new TreeMap<>();
+		for (int c = 0; c < COMMANDS.length; c++) {
+			long count = latencies[c].count();
+			if (count > 0) {
+				counts.put(COMMANDS[c].keyword(), count);
+			}
+		}
+		return counts;
+	}
+
+	@Override
+	public Map<String, Long> getP50Nanos() {
+		return percentiles(0.5);
+	}
+
+	@Override
+	public Map<String, Long> getP99Nanos() {
+		return percentiles(0.99);
+	}
+
+	@Override
+	public Map<String, Long> getP999Nanos() {
+		return percentiles(0.999);
+	}
+
+	@Override
+	public String getReport() {
+		StringBuilder report = new StringBuilder();
+		try {
+			print(report);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return report.toString();
+	}
+
+	@Override
+	public void reset() {
+		for (int c = 0; c < COMMANDS.length; c++) {
+			latencies[c].reset();
+			bases[c].reset();
+			bytes[c].reset();
+		}
+	}
+
+	private Map<String, Long> percentiles(final double fraction) {
+		Map<String, Long> values = new TreeMap<>();
+		for (int c = 0; c < COMMANDS.length; c++) {
+			if (latencies[c].count() > 0) {
+				values.put(COMMANDS[c].keyword(), latencies[c].percentile(fraction));
+			}
+		}
+		return values;
+	}
+
+	private static double micros(final long nanos) {
+		return nanos / 1000.0;
+	}
+
+	/**
+	 * Get the bytes allocated by the current thread so far.
+	 *
+	 * @return the bytes, or -1 if the JVM does not count them.
+	 */
+	private static long allocatedBytes() {
+		return ALLOCATIONS == null ? -1 : ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static com.sun.management.ThreadMXBean allocations() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) threads;
+			if (counting.isThreadAllocatedMemorySupported() && counting.isThreadAllocatedMemoryEnabled()) {
+				return counting;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,46 @@
+package cisc187.dna;
+
+import java.util.Map;
+
+/**
+ * The management interface of the sequencer metrics, registered with the platform MBean server
+ * as {@code cisc187.dna:type=Metrics}, so a JMX console can watch the commands of a running
+ * sequencer.
+ */
+public interface MetricsMXBean {
+
+  /**
+   * Get the number of times every command ran.
+   * @return the number of runs by command name.
+   */
+  Map<String, Long> getCounts();
+
+  /**
+   * Get the median latency of every command that ran.
+   * @return the 50th percentile latency in nanoseconds by command name.
+   */
+  Map<String, Long> getP50Nanos();
+
+  /**
+   * Get the 99th percentile latency of every command that ran.
+   * @return the 99th percentile latency in nanoseconds by command name.
+   */
+  Map<String, Long> getP99Nanos();
+
+  /**
+   * Get the 99.9th percentile latency of every command that ran.
+   * @return the 99.9th percentile latency in nanoseconds by command name.
+   */
+  Map<String, Long> getP999Nanos();
+
+  /**
+   * Get the report printed by the {@code stats} command.
+   * @return the report, one line per command.
+   */
+  String getReport();
+
+  /**
+   * Forget everything recorded so far.
+   */
+  void reset();
+}
@@ -0,0 +1,72 @@
+package cisc187.dna;
+
+/**
+ * A parsed command, ready to run, together with the fragment list positions it reads or changes.
+ * The positions let commands that touch different positions run at the same time.
+ */
+final class Operation {
+
+	private static final int[] NO_SLOTS = new int[0];
+
+	private final Runnable action;
+	private final int[] slots;
+
+	/**
+	 * Create an operation that touches some positions of the fragment list.
+	 *
+	 * @param action the work of the command.
+	 * @param slots the positions the command reads or changes.
+	 */
+	Operation(final Runnable action, final int... slots) {
+		this.action = action;
+		this.slots = slots;
+	}
+
+	/**
+	 * Create an operation that may touch any position of the fragment list, so it can not run
+	 * at the same time as any other operation.
+	 *
+	 * @param action the work of the command.
+	 * @return the operation.
+	 */
+	static Operation onAll(final Runnable action) {
+		return new Operation(action, (int[]) null);
+	}
+
+	/**
+	 * Create an operation that touches no position of the fragment list.
+	 *
+	 * @param action the work of the command.
+	 * @return the operation.
+	 */
+	static Operation onNone(final Runnable action) {
+		return new Operation(action, NO_SLOTS);
+	}
+
+	/**
+	 * Get this operation with every run of it recorded in metrics.
+	 *
+	 * @param metrics the metrics to record in.
+	 * @param command the command this operation runs.
+	 * @return the measured operation, touching the same positions.
+	 */
+	Operation measured(final Metrics metrics, final Command command) {
+		return new Operation(metrics.measure(command, action), slots);
+	}
+
+	/**
+	 * Run the command.
+	 */
+	void run() {
+		action.run();
+	}
+
+	/**
+	 * Get the positions of the fragment list the command reads or changes.
+	 *
+	 * @return the positions, or null if the command may touch every position.
+	 */
+	int[] slots() {
+		return slots;
+	}
+}
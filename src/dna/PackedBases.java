@@ -0,0 +1,302 @@
+package cisc187.dna;
+
+import java.util.Arrays;
+
+/**
+ * Compact storage for a run of nucleotide bases. Every base is stored as a 2 bit code in a
+ * {@code long[]}, 32 bases per word, so a fragment costs a quarter of a byte per base instead of
+ * a boxed Character per base. The codes are the index of the base in the valid characters of its
+ * {@link SequenceType}: A = 0, C = 1, G = 2 and T (or U) = 3. Base {@code i} lives in word
+ * {@code i / 32} at bit offset {@code 2 * (i % 32)}.
+ * <p>
+ * The storage itself does not know whether it holds DNA or RNA, the owning BaseSequence keeps the
+ * type and turns codes back into characters.
+ * </p>
+ */
+final class PackedBases {
+
+	/**
+	 * Number of bases stored in one word.
+	 */
+	static final int BASES_PER_WORD = 32;
+	/**
+	 * Mask for a single 2 bit base code.
+	 */
+	static final int CODE_MASK = 3;
+	private static final long[] NO_WORDS = new long[0];
+	/**
+	 * The code of every byte, -1 for bytes that are not a base. T and U share a code since the
+	 * type of the sequence tells them apart.
+	 */
+	private static final byte[] CODES = new byte[256];
+
+	static {
+		Arrays.fill(CODES, (byte) -1);
+		String bases = "ACGT";
+		for (int code = 0; code < bases.length(); code++) {
+			CODES[bases.charAt(code)] = (byte) code;
+			CODES[Character.toLowerCase(bases.charAt(code))] = (byte) code;
+		}
+		CODES['U'] = 3;
+		CODES['u'] = 3;
+	}
+
+	private long[] words;
+	private int length;
+
+	/**
+	 * Create empty storage.
+	 */
+	PackedBases() {
+		this.words = NO_WORDS;
+	}
+
+	/**
+	 * Create empty storage with room for a number of bases.
+	 *
+	 * @param capacity the number of bases to reserve space for.
+	 */
+	PackedBases(final int capacity) {
+		this.words = new long[wordsFor(capacity)];
+	}
+
+	/**
+	 * Create storage that takes ownership of already packed words.
+	 *
+	 * @param words the packed words.
+	 * @param length the number of bases held in the words.
+	 */
+	PackedBases(final long[] words, final int length) {
+		this.words = words;
+		this.length = length;
+	}
+
+	/**
+	 * Get the number of words needed to hold a number of bases.
+	 *
+	 * @param bases the number of bases.
+	 * @return the number of words.
+	 */
+	static int wordsFor(final int bases) {
+		return (bases + BASES_PER_WORD - 1) / BASES_PER_WORD;
+	}
+
+	/**
+	 * Get the number of bases held.
+	 *
+	 * @return the number of bases.
+	 */
+	int length() {
+		return length;
+	}
+
+	/**
+	 * Get the 2 bit code of the base at a position.
+	 *
+	 * @param i the position of the base.
+	 * @return the code of the base.
+	 */
+	int code(final int i) {
+		return code(words, i);
+	}
+
+	/**
+	 * Get the 2 bit code of a base character stored as a byte, whatever the type of the sequence.
+	 *
+	 * @param b the base character.
+	 * @return the code of the base, or -1 if the byte is not a base.
+	 */
+	static int codeOf(final byte b) {
+		return CODES[b & 0xFF];
+	}
+
+	/**
+	 * Get the 2 bit code of the base at a position of packed words.
+	 *
+	 * @param words the packed words.
+	 * @param i the position of the base.
+	 * @return the code of the base.
+	 */
+	static int code(final long[] words, final int i) {
+		return (int) (words[i >>> 5] >>> ((i & 31) << 1)) & CODE_MASK;
+	}
+
+	/**
+	 * Read the 32 bases starting at any position of packed words as one word.
+	 *
+	 * @param words the packed words, holding at least 32 bases from pos.
+	 * @param pos the position of the first base.
+	 * @return the 32 bases, the first one in the lowest bits.
+	 */
+	static long word(final long[] words, final int pos) {
+		int index = pos >>> 5;
+		int shift = (pos & 31) << 1;
+		if (shift == 0) {
+			return words[index];
+		}
+		return (words[index] >>> shift) | (words[index + 1] << (64 - shift));
+	}
+
+	/**
+	 * Get the packed words. The words are shared, not copied, so whoever takes them must not
+	 * change this storage afterwards.
+	 *
+	 * @return the packed words.
+	 */
+	long[] words() {
+		return words;
+	}
+
+	/**
+	 * Replace the code of the base at a position.
+	 *
+	 * @param i the position of the base.
+	 * @param code the new code.
+	 */
+	void set(final int i, final int code) {
+		int shift = (i & 31) << 1;
+		words[i >>> 5] = (words[i >>> 5] & ~(3L << shift)) | ((long) code << shift);
+	}
+
+	/**
+	 * Add a base code to the end of the storage, growing it if needed.
+	 *
+	 * @param code the code to add.
+	 */
+	void append(final int code) {
+		if (length == words.length * BASES_PER_WORD) {
+			words = Arrays.copyOf(words, Math.max(1, words.length * 2));
+		}
+		set(length++, code);
+	}
+
+	/**
+	 * Add every base of another storage to the end of this one.
+	 *
+	 * @param other the bases to add.
+	 */
+	void append(final PackedBases other) {
+		append(other.words, 0, other.length);
+	}
+
+	/**
+	 * Add a run of bases from packed words to the end of this storage. Whole words are moved at a
+	 * time, only the last few bases are copied one by one.
+	 *
+	 * @param src the packed words to copy from.
+	 * @param from the position of the first base to copy.
+	 * @param count the number of bases to copy.
+	 */
+	void append(final long[] src, final int from, final int count) {
+		ensureCapacity(length + count);
+		int i = 0;
+		for (; count - i >= BASES_PER_WORD; i += BASES_PER_WORD) {
+			long w = word(src, from + i);
+			int index = length >>> 5;
+			int shift = (length & 31) << 1;
+			if (shift == 0) {
+				words[index] = w;
+			} else {
+				words[index] |= w << shift;
+				words[index + 1] |= w >>> (64 - shift);
+			}
+			length += BASES_PER_WORD;
+		}
+		for (; i < count; i++) {
+			set(length++, code(src, from + i));
+		}
+	}
+
+	/**
+	 * Drop the unused words at the end, so the words hold no more than the bases.
+	 */
+	void trimToSize() {
+		if (words.length > wordsFor(length)) {
+			words = Arrays.copyOf(words, wordsFor(length));
+		}
+	}
+
+	/**
+	 * Reverse the order of the bases and replace every base by its complement, in place. The
+	 * complement of a code is {@code 3 - code}, which is the bitwise not of its 2 bits, so whole
+	 * words are reversed and complemented 32 bases at a time; the padding that ends up at the
+	 * front is then shifted out.
+	 */
+	void reverseComplement() {
+		int n = wordsFor(length);
+		for (int i = 0, j = n - 1; i <= j; i++, j--) {
+			long w = ~reverse(words[i]);
+			words[i] = ~reverse(words[j]);
+			words[j] = w;
+		}
+		int pad = (n * BASES_PER_WORD - length) << 1;
+		if (pad != 0) {
+			for (int i = 0; i < n - 1; i++) {
+				words[i] = (words[i] >>> pad) | (words[i + 1] << (64 - pad));
+			}
+			words[n - 1] >>>= pad;
+		}
+	}
+
+	/**
+	 * Reverse the order of the 32 bases in a word.
+	 *
+	 * @param w the bases.
+	 * @return the bases in reverse order.
+	 */
+	static long reverse(final long w) {
+		long r = ((w >>> 2) & 0x3333333333333333L) | ((w & 0x3333333333333333L) << 2);
+		r = ((r >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((r & 0x0F0F0F0F0F0F0F0FL) << 4);
+		return Long.reverseBytes(r);
+	}
+
+	/**
+	 * Get the number of heap bytes used by the packed words.
+	 *
+	 * @return the size of the packed words in bytes.
+	 */
+	long sizeInBytes() {
+		return (long) words.length * Long.BYTES;
+	}
+
+	private void ensureCapacity(final int bases) {
+		if (bases > words.length * BASES_PER_WORD) {
+			words = Arrays.copyOf(words, Math.max(wordsFor(bases), words.length * 2));
+		}
+	}
+
+	/**
+	 * Two storages are equal when they hold the same codes. Unused bits are always kept zero so
+	 * the comparison is done a word at a time.
+	 *
+	 * @param o the object to be compared with this object
+	 * @return true if both hold the same bases.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof PackedBases)) {
+			return false;
+		}
+		PackedBases p = (PackedBases) o;
+		if (length != p.length) {
+			return false;
+		}
+		int n = wordsFor(length);
+		for (int i = 0; i < n; i++) {
+			if (words[i] != p.words[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = length;
+		int n = wordsFor(length);
+		for (int i = 0; i < n; i++) {
+			hash = 31 * hash + Long.hashCode(words[i]);
+		}
+		return hash;
+	}
+}
@@ -1,5 +1,7 @@
 package cisc187.dna;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -32,13 +34,110 @@ public enum SequenceType {
    * @param chars the valid characters for this enum
    */
    private String validChars;
+   private char[] bases;
+   /**
+    * The code of every character below 256, -1 for the ones that are not a base of this type.
+    */
+   private final byte[] codes = new byte[256];
    
   SequenceType(String chars) {
 	  this.validChars = chars;
+	  this.bases = chars.toCharArray();
+	  Arrays.fill(codes, (byte) -1);
+	  for (int code = 0; code < chars.length(); code++) {
+		  codes[chars.charAt(code)] = (byte) code;
+		  codes[Character.toLowerCase(chars.charAt(code))] = (byte) code;
+	  }
   }
 
   public boolean isValid(char c){
-	  return validChars.indexOf(Character.toUpperCase(c)) >= 0; 
+	  return codeOf(c) >= 0; 
+  }
+
+  /**
+   * Get the 2 bit code used to store a base of this type.
+   * The code is the position of the base in the valid characters, so A = 0, C = 1, G = 2 
+   * and T or U = 3.
+   * @param c the base character
+   * @return the code of the base, or -1 if the character is not valid for this type
+   */
+  int codeOf(char c) {
+	  return c < codes.length ? codes[c] : -1;
+  }
+
+  /**
+   * Check the bases of a sequence and pack them, in a single pass.
+   * Every character is looked up in a table of this type, and the codes of 32 bases are 
+   * gathered into a word before it is stored; whether a character was not valid is 
+   * only checked once per word, from the sign bits of its codes.
+   * @param sequence the base characters, in upper or lower case
+   * @return the packed bases, or null if a character is not valid for this type
+   */
+  PackedBases pack(String sequence) {
+	  int length = sequence.length();
+	  long[] words = new long[PackedBases.wordsFor(length)];
+	  int i = 0;
+	  for (int w = 0; w < words.length; w++) {
+		  int end = Math.min(i + PackedBases.BASES_PER_WORD, length);
+		  long word = 0;
+		  int invalid = 0;
+		  for (int shift = 0; i < end; i++, shift += 2) {
+			  char c = sequence.charAt(i);
+			  int code = c < codes.length ? codes[c] : -1;
+			  invalid |= code;
+			  word |= (long) (code & PackedBases.CODE_MASK) << shift;
+		  }
+		  if (invalid < 0) {
+			  return null;
+		  }
+		  words[w] = word;
+	  }
+	  return new PackedBases(words, length);
+  }
+
+  /**
+   * Check that every byte of a buffer of base characters is a base of this type.
+   * The buffer is copied a window at a time into a scratch array and every window is
+   * checked with the table of this type, so each page is read once in bulk instead of a 
+   * byte at a time through the buffer.
+   * @param bytes the buffer holding one base character per byte
+   * @param length the number of bytes to check, from the start of the buffer
+   * @return true if every byte is a base of this type
+   */
+  boolean accepts(ByteBuffer bytes, int length) {
+	  ByteBuffer window = bytes.duplicate();
+	  window.position(0);
+	  byte[] scratch = new byte[Math.min(length, BaseRope.MAPPED_LEAF_SIZE)];
+	  for (int from = 0; from < length; from += scratch.length) {
+		  int count = Math.min(scratch.length, length - from);
+		  window.get(scratch, 0, count);
+		  int invalid = 0;
+		  for (int i = 0; i < count; i++) {
+			  invalid |= codes[scratch[i] & 0xFF];
+		  }
+		  if (invalid < 0) {
+			  return false;
+		  }
+	  }
+	  return true;
+  }
+
+  /**
+   * Get the base character stored under a 2 bit code.
+   * @param code the code of the base
+   * @return the upper case base character
+   */
+  char baseOf(int code) {
+	  return validChars.charAt(code);
+  }
+
+  /**
+   * Get the base characters of this type indexed by their 2 bit codes.
+   * The array is shared and must not be changed.
+   * @return the upper case base characters
+   */
+  char[] bases() {
+	  return bases;
   }
 }
 
@@ -3,17 +3,59 @@
  */
 package cisc187.dna;
 
-import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import javax.management.JMException;
 
 public final class Sequencer {
 
 	private static final String CR = System.lineSeparator();
 
+	/**
+	 * The default workspace, the one the journal and the snapshots given on the command line
+	 * are of.
+	 */
 	private static FragmentList frags;
+	private static final Workspaces workspaces = new Workspaces();
+	/**
+	 * The workspace the commands parsed on the current thread work on.
+	 */
+	private static final ThreadLocal<FragmentList> selected = new ThreadLocal<FragmentList>() {
+		@Override
+		protected FragmentList initialValue() {
+			return frags;
+		}
+	};
+	/**
+	 * The workspaces that were given a budget, on which commands storing new bases must run one
+	 * at a time, as one may take the bytes another would have been allowed.
+	 */
+	private static final Set<FragmentList> budgeted = Collections.newSetFromMap(new ConcurrentHashMap<FragmentList, Boolean>());
+	private static boolean parallel;
+	private static boolean intern;
+	private static Journal journal;
+	private static final Metrics metrics = new Metrics();
+	/**
+	 * Set while a checkpoint started by a growing journal is waiting to run.
+	 */
+	private static volatile boolean checkpointPending;
 	private static int maxSize;
-	private static final int MAX_SIZE = 100;
+	private static final int MAX_SIZE = 10000000;
+	/**
+	 * The names of the sequence types a command may use, in upper case.
+	 */
+	private static final String[] TYPES = {"DNA", "RNA"};
+	/**
+	 * The actions of the workspace command, in upper case.
+	 */
+	private static final String[] WORKSPACE_ACTIONS = {"CREATE", "USE", "DROP", "BUDGET", "LIST"};
 
 	/**
 	 * Not an instantiable class
@@ -22,121 +64,796 @@ public final class Sequencer {
 	}
 
 	public static void main(String[] args) {
-		if (args.length < 2 || args.length < 1 || Integer.parseInt(args[0]) > MAX_SIZE) {
+		int first = 0;
+		String loadFrom = null;
+		String saveTo = null;
+		String journalTo = null;
+		boolean stats = false;
+		int port = -1;
+		while (first < args.length && args[first].startsWith("--")) {
+			if (args[first].equals("--parallel")) {
+				parallel = true;
+				first++;
+			} else if (args[first].equals("--intern")) {
+				intern = true;
+				first++;
+			} else if (args[first].equals("--async-diagnostics")) {
+				Diagnostics.use(new AsyncDiagnostics(System.err, AsyncDiagnostics.DEFAULT_CAPACITY));
+				first++;
+			} else if (args[first].equals("--stats")) {
+				stats = true;
+				first++;
+			} else if (args[first].equals("--load") && first + 1 < args.length) {
+				loadFrom = args[first + 1];
+				first += 2;
+			} else if (args[first].equals("--save") && first + 1 < args.length) {
+				saveTo = args[first + 1];
+				first += 2;
+			} else if (args[first].equals("--serve") && first + 1 < args.length) {
+				port = Integer.parseInt(args[first + 1]);
+				first += 2;
+			} else if (args[first].equals("--journal") && first + 1 < args.length) {
+				journalTo = args[first + 1];
+				first += 2;
+			} else {
+				break;
+			}
+		}
+		if (args.length - first < (port < 0 ? 2 : 1) || args[first].startsWith("--") || Integer.parseInt(args[first]) > MAX_SIZE) {
 			usage();
 		} else {
-			maxSize = Integer.parseInt(args[0]);
-			frags = new FragmentList(maxSize);
-			processFile(args[1]);
+			maxSize = Integer.parseInt(args[first]);
+			if (stats) {
+				reportStats();
+			}
+			frags = newList(maxSize);
+			workspaces.create(Workspaces.DEFAULT, frags);
+			if (journalTo != null) {
+				try {
+					journal = Journal.open(Paths.get(journalTo), frags);
+				} catch (IOException e) {
+					System.out.println("Unable to recover fragments from journal " + journalTo + ".");
+					return;
+				}
+			}
+			if (loadFrom != null) {
+				load(frags, loadFrom);
+			}
+			if (port >= 0) {
+				serve(port, parallel ? new ForkJoinPool() : null, saveTo, journalTo);
+				return;
+			}
+			if (parallel) {
+				BatchExecutor batch = new BatchExecutor(new ForkJoinPool(), BatchExecutor.DEFAULT_WINDOW);
+				processFile(args[first + 1], batch);
+			} else {
+				processFile(args[first + 1], null);
+			}
+			finish(saveTo, journalTo);
 		}
 	}
 
-	private static void processFile(String filename) {
+	/**
+	 * Run the commands of clients until the process is stopped, then save and close the journal.
+	 *
+	 * @param port the port to listen on, 0 for any free port.
+	 * @param pool the pool to run the commands of a batch on, or null to run them one at a time.
+	 * @param saveTo the snapshot to save to when stopped, or null.
+	 * @param journalTo the prefix of the journal, or null.
+	 */
+	private static void serve(final int port, final ForkJoinPool pool, final String saveTo, final String journalTo) {
+		final SequencerServer server;
+		try {
+			server = new SequencerServer(port, pool);
+		} catch (IOException e) {
+			System.out.println("Unable to listen on port " + port + ".");
+			return;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					server.close();
+				} catch (IOException e) {
+					// stopping anyway.
+				}
+				finish(saveTo, journalTo);
+			}
+		}));
+		System.out.println("Listening on port " + server.port() + ".");
 		try {
-			Scanner sc = new Scanner(new File(filename));
-			while (sc.hasNextLine()) {
-				String nextLine = sc.nextLine();
-				if (!nextLine.isEmpty()) {
-					processCommand(new Scanner(nextLine));
+			server.serve();
+		} catch (IOException e) {
+			System.out.println("Unable to accept clients on port " + server.port() + ".");
+		}
+	}
+
+	/**
+	 * Write out the diagnostics, save the fragments if asked to and close the journal.
+	 *
+	 * @param saveTo the snapshot to save to, or null.
+	 * @param journalTo the prefix of the journal, or null.
+	 */
+	private static void finish(final String saveTo, final String journalTo) {
+		Diagnostics.sink().flush();
+		if (saveTo != null) {
+			save(frags, saveTo);
+		}
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				System.out.println("Unable to write journal " + journalTo + ".");
+			}
+		}
+	}
+
+	/**
+	 * Run every command of a file, either one at a time or in parallel windows.
+	 *
+	 * @param filename the name of the commands file.
+	 * @param batch the executor to run the commands on, or null to run them one at a time.
+	 */
+	private static void processFile(String filename, BatchExecutor batch) {
+		try (CommandReader line = new CommandReader(new FileInputStream(filename))) {
+			while (line.nextLine()) {
+				Operation operation;
+				try {
+					operation = processCommand(line);
+				} catch (RuntimeException e) {
+					// finish the commands before the one that could not be parsed.
+					if (batch != null) {
+						batch.flush();
+					}
+					throw e;
+				}
+				if (operation != null) {
+					execute(operation, batch);
 				}
 			}
-			sc.close();
+			if (batch != null) {
+				batch.flush();
+			}
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Parse the command on the current line of a client, answering a command that can not be
+	 * parsed with a message rather than failing the client's other commands.
+	 *
+	 * @param line the reader positioned on the command line.
+	 * @return the operation of the command, or null if the line holds no command.
+	 */
+	static Operation parseLine(final CommandReader line) {
+		try {
+			return processCommand(line);
+		} catch (RuntimeException e) {
+			return invalidCommand();
 		}
 	}
 
-	private static void processCommand(final Scanner line) {
+	/**
+	 * Run an operation, or submit it to the executor, then checkpoint the journal if it has
+	 * grown too large.
+	 *
+	 * @param operation the operation to run.
+	 * @param batch the executor to run it on, or null to run it now.
+	 */
+	static void execute(final Operation operation, final BatchExecutor batch) {
+		if (batch == null) {
+			operation.run();
+		} else {
+			batch.submit(operation);
+		}
+		if (journal != null && !checkpointPending && journal.needsCheckpoint()) {
+			checkpointPending = true;
+			if (batch == null) {
+				checkpoint().run();
+			} else {
+				batch.submit(checkpoint());
+			}
+		}
+	}
+
+	private static Operation processCommand(final CommandReader line) {
 		if (line.hasNext()) {
-			switch (line.next().toLowerCase()) {
-				case "insert":
-					parseInsert(line);
-					break;
-				case "remove":
-					parseRemove(line);
-					break;
-				case "print":
-					parsePrint(line);
-					break;
-				case "clip":
-					parseClip(line);
-					break;
-				case "copy":
-					parseCopy(line);
-					break;
-				case "swap":
-					parseSwap(line);
-					break;
-				case "transcribe":
-					parseTranscribe(line);
-					break;
-				default:
-					System.out.println("Invalid command.");
-					break;
+			Command command = line.nextCommand();
+			if (command == null) {
+				return invalidCommand();
 			}
+			Operation operation = parseCommand(command, line);
+			return operation == null ? null : operation.measured(metrics, command);
 		} else {
 			//line is not empty but doesnt have a command. Do nothing.
+			return null;
 		}
 	}
 
-	private static void parseInsert(final Scanner line) {
-		int pos = Integer.parseInt(line.next());
-		SequenceType type;
-		String sequence;
-		switch (line.next().toUpperCase()) {
-			case ("DNA"):
-				type = SequenceType.DNA;
-				break;
-			case ("RNA"):
-				type = SequenceType.RNA;
-				break;
+	private static Operation parseCommand(final Command command, final CommandReader line) {
+		switch (command) {
+			case INSERT:
+				return parseInsert(line);
+			case REMOVE:
+				return parseRemove(line);
+			case PRINT:
+				return parsePrint(line);
+			case CLIP:
+				return parseClip(line);
+			case COPY:
+				return parseCopy(line);
+			case SWAP:
+				return parseSwap(line);
+			case TRANSCRIBE:
+				return parseTranscribe(line);
+			case REVCOMP:
+				return parseRevcomp(line);
+			case TRANSLATE:
+				return parseTranslate(line);
+			case IMPORT:
+				return parseImport(line);
+			case MAP:
+				return parseMap(line);
+			case FIND:
+				return parseFind(line);
+			case COUNT:
+				return parseCount(line);
+			case LOCATE:
+				return parseLocate(line);
+			case SAVE:
+				return parseSave(line);
+			case LOAD:
+				return parseLoad(line);
+			case CHECKPOINT:
+				return checkpoint();
+			case STATS:
+				return parseStats();
+			case WORKSPACE:
+				return parseWorkspace(line);
 			default:
-				type = SequenceType.EMPTY;
+				return invalidCommand();
 		}
-		sequence = line.next();
-		frags.insert(pos, type, sequence);
 	}
 
-	private static void parseRemove(final Scanner line) {
-		int pos = Integer.parseInt(line.next());
-		frags.remove(pos);
+	private static Operation invalidCommand() {
+		return Operation.onNone(new Runnable() {
+			@Override
+			public void run() {
+				Console.out().println("Invalid command.");
+			}
+		});
+	}
+
+	private static Operation parseInsert(final CommandReader line) {
+		final FragmentList list = selected.get();
+		if (line.hasNextRange()) {
+			final int[] positions = parseRange(line);
+			final SequenceType type = parseType(line);
+			final String sequence = line.next();
+			return Operation.onAll(new Runnable() {
+				@Override
+				public void run() {
+					list.insertBatch(positions, type, sequence);
+				}
+			});
+		}
+		final int pos = line.nextInt();
+		final SequenceType type = parseType(line);
+		final String sequence = line.next();
+		return growing(list, new Runnable() {
+			@Override
+			public void run() {
+				list.insert(pos, type, sequence);
+			}
+		}, pos);
+	}
+
+	/**
+	 * Read a range of positions, {@code from..to}, as every position it holds. A command given a
+	 * range changes all of its positions with a single bulk call, which runs on its own as it
+	 * may touch any number of positions.
+	 *
+	 * @throws NumberFormatException if the range holds more positions than a list may have.
+	 */
+	private static int[] parseRange(final CommandReader line) {
+		int[] ends = line.nextRange();
+		if ((long) ends[1] - ends[0] >= MAX_SIZE) {
+			throw new NumberFormatException("Range too long: " + ends[0] + ".." + ends[1]);
+		}
+		int[] positions = new int[ends[1] - ends[0] + 1];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = ends[0] + i;
+		}
+		return positions;
+	}
+
+	private static SequenceType parseType(final CommandReader line) {
+		switch (line.nextChoice(TYPES)) {
+			case 0:
+				return SequenceType.DNA;
+			case 1:
+				return SequenceType.RNA;
+			default:
+				return SequenceType.EMPTY;
+		}
 	}
 
-	private static void parsePrint(final Scanner line) {
+	private static Operation parseRemove(final CommandReader line) {
+		final FragmentList list = selected.get();
+		if (line.hasNextRange()) {
+			final int[] positions = parseRange(line);
+			return Operation.onAll(new Runnable() {
+				@Override
+				public void run() {
+					list.removeAll(positions);
+				}
+			});
+		}
+		final int pos = line.nextInt();
+		return new Operation(new Runnable() {
+			@Override
+			public void run() {
+				list.remove(pos);
+			}
+		}, pos);
+	}
+
+	private static Operation parsePrint(final CommandReader line) {
+		final FragmentList list = selected.get();
 		if (line.hasNext()) {
-			frags.print(Integer.parseInt(line.next()));
-		} else {
-			frags.print();
+			final int pos = line.nextInt();
+			return new Operation(new Runnable() {
+				@Override
+				public void run() {
+					list.print(pos);
+				}
+			}, pos);
+		}
+		return Operation.onAll(new Runnable() {
+			@Override
+			public void run() {
+				list.print();
+			}
+		});
+	}
+
+	private static Operation parseClip(final CommandReader line) {
+		final FragmentList list = selected.get();
+		if (line.hasNextRange()) {
+			final int[] positions = parseRange(line);
+			final int start = line.nextInt();
+			if (line.hasNext()) {
+				final int end = line.nextInt();
+				return Operation.onAll(new Runnable() {
+					@Override
+					public void run() {
+						list.clipRange(positions, start, end);
+					}
+				});
+			}
+			return Operation.onAll(new Runnable() {
+				@Override
+				public void run() {
+					list.clipRange(positions, start);
+				}
+			});
+		}
+		final int pos = line.nextInt();
+		final int start = line.nextInt();
+		if (line.hasNext()) {
+			final int end = line.nextInt();
+			return new Operation(new Runnable() {
+				@Override
+				public void run() {
+					list.clip(pos, start, end);
+				}
+			}, pos);
+		}
+		return new Operation(new Runnable() {
+			@Override
+			public void run() {
+				list.clip(pos, start);
+			}
+		}, pos);
+	}
+
+	private static Operation parseCopy(final CommandReader line) {
+		final FragmentList list = selected.get();
+		final int pos1 = line.nextInt();
+		final int pos2 = line.nextInt();
+		return growing(list, new Runnable() {
+			@Override
+			public void run() {
+				list.copy(pos1, pos2);
+			}
+		}, pos1, pos2);
+	}
+
+	private static Operation parseSwap(final CommandReader line) {
+		final FragmentList list = selected.get();
+		final int pos1 = line.nextInt();
+		final int start1 = line.nextInt();
+		final int pos2 = line.nextInt();
+		final int start2 = line.nextInt();
+		return growing(list, new Runnable() {
+			@Override
+			public void run() {
+				list.swap(pos1, start1, pos2, start2);
+			}
+		}, pos1, pos2);
+	}
+
+	private static Operation parseTranscribe(final CommandReader line) {
+		final FragmentList list = selected.get();
+		if (line.hasNextRange()) {
+			final int[] positions = parseRange(line);
+			return Operation.onAll(new Runnable() {
+				@Override
+				public void run() {
+					list.transcribeAll(positions);
+				}
+			});
 		}
+		final int pos = line.nextInt();
+		return new Operation(new Runnable() {
+			@Override
+			public void run() {
+				list.transcribe(pos);
+			}
+		}, pos);
 	}
 
-	private static void parseClip(final Scanner line) {
-		int pos = Integer.parseInt(line.next());
-		int start = Integer.parseInt(line.next());
+	private static Operation parseRevcomp(final CommandReader line) {
+		final FragmentList list = selected.get();
+		if (line.hasNextRange()) {
+			final int[] positions = parseRange(line);
+			return Operation.onAll(new Runnable() {
+				@Override
+				public void run() {
+					list.reverseComplementAll(positions);
+				}
+			});
+		}
+		final int pos = line.nextInt();
+		return new Operation(new Runnable() {
+			@Override
+			public void run() {
+				list.reverseComplement(pos);
+			}
+		}, pos);
+	}
+
+	private static Operation parseTranslate(final CommandReader line) {
+		final FragmentList list = selected.get();
+		final int pos = line.nextInt();
+		return new Operation(new Runnable() {
+			@Override
+			public void run() {
+				list.translate(pos);
+			}
+		}, pos);
+	}
+
+	private static Operation parseImport(final CommandReader line) {
+		final FragmentList list = selected.get();
+		final int pos = line.nextInt();
+		final SequenceType type = parseType(line);
+		final String filename = line.next();
+		// an import fills as many positions as the file has records.
+		return Operation.onAll(new Runnable() {
+			@Override
+			public void run() {
+				try (FastaReader reader = new FastaReader(new FileInputStream(filename), type)) {
+					list.insert(pos, reader);
+				} catch (IOException e) {
+					Console.out().print("Unable to import fragments from " + filename + "." + CR);
+				}
+			}
+		});
+	}
+
+	private static Operation parseMap(final CommandReader line) {
+		final FragmentList list = selected.get();
+		final int pos = line.nextInt();
+		final SequenceType type = parseType(line);
+		final String filename = line.next();
+		long offset = 0;
+		long length = -1;
 		if (line.hasNext()) {
-			frags.clip(pos, start, Integer.parseInt(line.next()));
+			offset = line.nextLong();
+		}
+		if (line.hasNext()) {
+			length = line.nextLong();
+		}
+		final long from = offset;
+		final long count = length;
+		return growing(list, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					list.map(pos, type, Paths.get(filename), from, count);
+				} catch (IOException e) {
+					Console.out().print("Unable to map fragment from " + filename + "." + CR);
+				}
+			}
+		}, pos);
+	}
+
+	private static Operation parseFind(final CommandReader line) {
+		final FragmentList list = selected.get();
+		final SequenceType type = parseType(line);
+		final String sequence = line.next();
+		// a search reads every fragment.
+		return Operation.onAll(new Runnable() {
+			@Override
+			public void run() {
+				list.find(type, sequence);
+			}
+		});
+	}
+
+	private static Operation parseCount(final CommandReader line) {
+		final FragmentList list = selected.get();
+		final int pos = line.nextInt();
+		final String sequence = line.next();
+		return new Operation(new Runnable() {
+			@Override
+			public void run() {
+				list.count(pos, sequence);
+			}
+		}, pos);
+	}
+
+	private static Operation parseLocate(final CommandReader line) {
+		final FragmentList list = selected.get();
+		final int pos = line.nextInt();
+		final String sequence = line.next();
+		return new Operation(new Runnable() {
+			@Override
+			public void run() {
+				list.locate(pos, sequence);
+			}
+		}, pos);
+	}
+
+	private static Operation parseSave(final CommandReader line) {
+		final FragmentList list = selected.get();
+		final String filename = line.next();
+		return Operation.onAll(new Runnable() {
+			@Override
+			public void run() {
+				save(list, filename);
+			}
+		});
+	}
+
+	private static Operation parseLoad(final CommandReader line) {
+		final FragmentList list = selected.get();
+		final String filename = line.next();
+		return Operation.onAll(new Runnable() {
+			@Override
+			public void run() {
+				load(list, filename);
+			}
+		});
+	}
+
+	private static Operation parseStats() {
+		return Operation.onAll(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					metrics.print(Console.out());
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Parse a workspace command: {@code workspace create <name> <size> [budget]},
+	 * {@code workspace use <name>}, {@code workspace drop <name>},
+	 * {@code workspace budget [bytes]} or {@code workspace list}. Creating, using and dropping
+	 * take effect as the command is parsed, so the commands after it are parsed for the right
+	 * workspace even while earlier ones are still running; only their messages wait for the
+	 * earlier commands.
+	 */
+	private static Operation parseWorkspace(final CommandReader line) {
+		switch (line.nextChoice(WORKSPACE_ACTIONS)) {
+			case 0:
+				String name = line.next();
+				int size = line.nextInt();
+				return createWorkspace(name, size, line.hasNext() ? line.nextLong() : Long.MAX_VALUE);
+			case 1:
+				return useWorkspace(line.next());
+			case 2:
+				return dropWorkspace(line.next());
+			case 3:
+				return parseBudget(line);
+			case 4:
+				return listWorkspaces();
+			default:
+				return invalidCommand();
+		}
+	}
+
+	private static Operation createWorkspace(final String name, final int size, final long budget) {
+		if (size <= 0 || size > MAX_SIZE || budget < 0) {
+			return message("Unable to create workspace " + name + "." + CR + "Size must be between 1 and "
+				+ MAX_SIZE + " and the budget at least 0." + CR);
+		}
+		FragmentList list = newList(size);
+		list.setBudget(budget);
+		if (!workspaces.create(name, list)) {
+			return message("Workspace " + name + " already exists." + CR);
+		}
+		if (budget != Long.MAX_VALUE) {
+			budgeted.add(list);
+		}
+		return null;
+	}
+
+	private static Operation useWorkspace(final String name) {
+		FragmentList list = workspaces.get(name);
+		if (list == null) {
+			return message("No workspace named " + name + "." + CR);
+		}
+		selected.set(list);
+		return null;
+	}
+
+	private static Operation dropWorkspace(final String name) {
+		final FragmentList list = workspaces.drop(name);
+		if (list == null) {
+			return message(Workspaces.DEFAULT.equals(name) ? "Unable to drop the default workspace." + CR
+				: "No workspace named " + name + "." + CR);
+		}
+		if (selected.get() == list) {
+			selected.set(frags);
+		}
+		budgeted.remove(list);
+		// the commands parsed for it before still run on its fragments, then they are freed.
+		return Operation.onAll(new Runnable() {
+			@Override
+			public void run() {
+				list.clear();
+			}
+		});
+	}
+
+	private static Operation parseBudget(final CommandReader line) {
+		final FragmentList list = selected.get();
+		final long budget = line.hasNext() ? line.nextLong() : Long.MAX_VALUE;
+		if (budget < 0) {
+			return message("Unable to set budget. The budget must be at least 0." + CR);
+		}
+		// the commands parsed after this one run after it, so they only wait for each other
+		// while the budget they run under is limited.
+		if (budget == Long.MAX_VALUE) {
+			budgeted.remove(list);
 		} else {
-			frags.clip(pos, start);
+			budgeted.add(list);
 		}
+		return Operation.onAll(new Runnable() {
+			@Override
+			public void run() {
+				list.setBudget(budget);
+			}
+		});
 	}
 
-	private static void parseCopy(final Scanner line) {
-		int pos1 = Integer.parseInt(line.next());
-		int pos2 = Integer.parseInt(line.next());
-		frags.copy(pos1, pos2);
+	/**
+	 * Print a line for every workspace with its size and the packed bytes it holds, for example
+	 * {@code * default: 8 positions, 64 of 1024 bytes}, the workspace in use marked with a star.
+	 */
+	private static Operation listWorkspaces() {
+		final Map<String, FragmentList> all = workspaces.all();
+		final FragmentList current = selected.get();
+		return Operation.onAll(new Runnable() {
+			@Override
+			public void run() {
+				StringBuilder out = new StringBuilder();
+				for (Map.Entry<String, FragmentList> e : all.entrySet()) {
+					FragmentList list = e.getValue();
+					out.append(list == current ? "* " : "  ").append(e.getKey()).append(": ")
+						.append(list.getSize()).append(" positions, ").append(list.getBytes());
+					if (list.getBudget() != Long.MAX_VALUE) {
+						out.append(" of ").append(list.getBudget());
+					}
+					out.append(" bytes").append(CR);
+				}
+				Console.out().print(out);
+			}
+		});
+	}
+
+	/**
+	 * Create the operation of a command that may store new bases at some positions of a list,
+	 * which may touch every position if the list has a budget.
+	 */
+	private static Operation growing(final FragmentList list, final Runnable action, final int... slots) {
+		return budgeted.contains(list) ? Operation.onAll(action) : new Operation(action, slots);
 	}
 
-	private static void parseSwap(final Scanner line) {
-		int pos1 = Integer.parseInt(line.next());
-		int start1 = Integer.parseInt(line.next());
-		int pos2 = Integer.parseInt(line.next());
-		int start2 = Integer.parseInt(line.next());
-		frags.swap(pos1, start1, pos2, start2);
+	/**
+	 * Create the operation printing a message.
+	 */
+	private static Operation message(final String text) {
+		return Operation.onNone(new Runnable() {
+			@Override
+			public void run() {
+				Console.out().print(text);
+			}
+		});
 	}
 
-	private static void parseTranscribe(final Scanner line) {
-		int pos = Integer.parseInt(line.next());
-		frags.transcribe(pos);
+	/**
+	 * Create an empty fragment list, concurrent and interning if the sequencer was asked to.
+	 */
+	private static FragmentList newList(final int size) {
+		FragmentList list = parallel ? new ConcurrentFragmentList(size) : new FragmentList(size);
+		if (intern) {
+			list.useInternPool(InternPool.SHARED);
+		}
+		return list;
+	}
+
+	/**
+	 * Publish the metrics through JMX and print them to System.err when the sequencer exits.
+	 */
+	private static void reportStats() {
+		try {
+			metrics.register();
+		} catch (JMException e) {
+			System.err.println("Unable to register the metrics with JMX.");
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				System.err.print(metrics.getReport());
+			}
+		}, "stats"));
+	}
+
+	/**
+	 * Create the operation saving a snapshot of the fragments and emptying the journal.
+	 */
+	private static Operation checkpoint() {
+		return Operation.onAll(new Runnable() {
+			@Override
+			public void run() {
+				checkpointPending = false;
+				if (journal == null) {
+					Console.out().print("Unable to checkpoint without a journal." + CR);
+					return;
+				}
+				try {
+					journal.checkpoint();
+				} catch (IOException e) {
+					Console.out().print("Unable to checkpoint the journal." + CR);
+				}
+			}
+		});
+	}
+
+	private static void save(final FragmentList list, final String filename) {
+		try {
+			list.save(Paths.get(filename));
+		} catch (IOException e) {
+			Console.out().print("Unable to save fragments to " + filename + "." + CR);
+		}
+	}
+
+	private static void load(final FragmentList list, final String filename) {
+		try {
+			list.load(Paths.get(filename));
+		} catch (IOException e) {
+			Console.out().print("Unable to load fragments from " + filename + "." + CR);
+		}
 	}
 
 	/**
@@ -145,8 +862,17 @@ public final class Sequencer {
 	private static void usage() {
 		System.out.println("Error running sequencer. Invalid command line arguments!");
 		System.out.println("usage:");
-		System.out.println("\tjava Sequencer <size> <filename>");
+		System.out.println("\tjava Sequencer [--parallel] [--intern] [--async-diagnostics] [--stats] [--load <snapshot>] [--save <snapshot>] [--journal <prefix>] [--serve <port>] <size> <filename>");
 		System.out.println("\twhere");
+		System.out.println("\t--parallel = run commands on different fragments at the same time.");
+		System.out.println("\t--intern = store equal fragments once.");
+		System.out.println("\t--async-diagnostics = write the messages of rejected changes to stderr in batches, on a thread of their own.");
+		System.out.println("\t--stats = publish command metrics through JMX and print them to stderr at exit.");
+		System.out.println("\t--load = load the fragments saved in a snapshot before running the commands.");
+		System.out.println("\t--save = save the fragments to a snapshot after running the commands.");
+		System.out.println("\t--journal = recover the fragments from <prefix>.snapshot and <prefix>.journal, then journal every change.");
+		System.out.println("\t--serve = keep the fragments in memory and run the commands of clients on a port of the local host, instead of a file.");
+		System.out.println("\t          commands are sent in batches ending with a line holding \"" + SequencerServer.END + "\", each answered by its output and such a line.");
 		System.out.println("\tsize = maximum number of fragments this sequenceer can hold.");
 		System.out.println("\t       size must be > 0 and <= " + MAX_SIZE);
 		System.out.println("\tfilename = name of the commands file containing valid sequencer commands to process.");
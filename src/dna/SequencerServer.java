@@ -0,0 +1,178 @@
+package cisc187.dna;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Keeps the fragments of the sequencer in memory and runs the commands of clients connecting
+ * to a port of the local host, so a client does not pay for starting a JVM and loading the
+ * fragments with every commands file.
+ * <p>
+ * Clients send the same commands as a commands file, one per line, in batches: a line holding
+ * only {@value #END} ends a batch. The server answers every batch with the output of its
+ * commands followed by a line holding only {@value #END}, so a client can send many batches
+ * without waiting and read the answers in the order it sent them. A batch also ends when the
+ * client closes its side of the connection. A command that can not be parsed is answered with
+ * "Invalid command." and the rest of the batch still runs.
+ * </p>
+ * <p>
+ * Every client has its own thread, which reads a whole batch before it takes the lock of the
+ * server, so a slow client never holds up the others. Batches run one at a time, each as if it
+ * was the only one, and the output of a batch is collected in memory and written after the lock
+ * is released. With a pool, the commands of a batch run in parallel through a
+ * {@link BatchExecutor}.
+ * </p>
+ */
+final class SequencerServer implements Closeable {
+
+	/**
+	 * The line ending a batch of commands, and its answer.
+	 */
+	static final String END = ".";
+	private static final byte[] END_LINE = (END + System.lineSeparator()).getBytes(StandardCharsets.ISO_8859_1);
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final ServerSocket socket;
+	private final ForkJoinPool pool;
+	private final Object lock = new Object();
+	private int clients;
+	/**
+	 * Set once the server is closed, after which no batch runs. Guarded by the lock.
+	 */
+	private boolean stopped;
+
+	/**
+	 * Create a server listening on a port of the loopback address.
+	 *
+	 * @param port the port, 0 to let the system pick a free one.
+	 * @param pool the pool to run the commands of a batch on, or null to run them one at a time.
+	 * @throws IOException if the port can not be listened on.
+	 */
+	SequencerServer(final int port, final ForkJoinPool pool) throws IOException {
+		this.socket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		this.pool = pool;
+	}
+
+	/**
+	 * Get the port the server listens on.
+	 *
+	 * @return the port.
+	 */
+	int port() {
+		return socket.getLocalPort();
+	}
+
+	/**
+	 * Accept clients until the server is closed, serving each on a thread of its own.
+	 *
+	 * @throws IOException if a client can not be accepted.
+	 */
+	void serve() throws IOException {
+		while (true) {
+			final Socket client;
+			try {
+				client = socket.accept();
+			} catch (SocketException e) {
+				if (socket.isClosed()) {
+					return;
+				}
+				throw e;
+			}
+			client.setTcpNoDelay(true);
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					serve(client);
+				}
+			}, "sequencer-client-" + (++clients));
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stop accepting clients and wait for the batch running now to finish, no batch runs after
+	 * it. The fragments are then left as they are for as long as the process runs.
+	 *
+	 * @throws IOException if the port can not be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		socket.close();
+		synchronized (lock) {
+			stopped = true;
+		}
+	}
+
+	/**
+	 * Run the batches of a client until it disconnects.
+	 */
+	private void serve(final Socket client) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream console = new PrintStream(output, false);
+		BatchExecutor batch = pool == null ? null : new BatchExecutor(pool, BatchExecutor.DEFAULT_WINDOW);
+		List<Operation> operations = new ArrayList<Operation>();
+		try (Socket s = client;
+			CommandReader line = new CommandReader(s.getInputStream());
+			OutputStream answer = s.getOutputStream()) {
+			boolean more = true;
+			while (more) {
+				more = false;
+				while (line.nextLine()) {
+					if (line.restIs(END)) {
+						more = true;
+						break;
+					}
+					Operation operation = Sequencer.parseLine(line);
+					if (operation != null) {
+						operations.add(operation);
+					}
+				}
+				if (!more && operations.isEmpty()) {
+					break;
+				}
+				Console.redirect(console);
+				try {
+					synchronized (lock) {
+						if (stopped) {
+							return;
+						}
+						for (Operation operation : operations) {
+							Sequencer.execute(operation, batch);
+						}
+						if (batch != null) {
+							batch.flush();
+						}
+					}
+				} finally {
+					Console.restore();
+				}
+				console.flush();
+				operations.clear();
+				output.write(END_LINE);
+				output.writeTo(answer);
+				answer.flush();
+				if (output.size() > BUFFER_SIZE) {
+					// let a large answer be collected instead of keeping its buffer.
+					output = new ByteArrayOutputStream();
+					console = new PrintStream(output, false);
+				} else {
+					output.reset();
+				}
+			}
+		} catch (IOException e) {
+			// the client went away, its batch is either done or was never run.
+		}
+	}
+}
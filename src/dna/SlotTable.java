@@ -0,0 +1,140 @@
+package cisc187.dna;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The slots of a FragmentList, stored sparsely. Slots are kept in pages of {@link #PAGE_SIZE}
+ * and a page is only allocated when one of its slots is first given a sequence, so a list with
+ * millions of positions costs one reference per page plus the pages that are actually used.
+ * Empty slots hold null, and a page whose last sequence is removed is freed again.
+ * <p>
+ * Pages are created and freed with a compare and set and slots are read and written with
+ * volatile semantics, so a table may be shared by several threads; callers still have to
+ * serialize their own read-change-write steps on a slot. Each page counts its sequences, and a
+ * writer counts itself in before it stores, so a page is only freed while no slot in it holds a
+ * sequence or is about to.
+ * </p>
+ */
+final class SlotTable {
+
+	/**
+	 * The number of bits of a position that select a slot within its page.
+	 */
+	static final int PAGE_BITS = 10;
+	/**
+	 * The number of slots in a page.
+	 */
+	static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	/**
+	 * The count of a page that has been freed, no sequence may be stored in it any more.
+	 */
+	private static final int FREED = -1;
+
+	private final AtomicReferenceArray<Page> pages;
+
+	/**
+	 * The slots of one page and the number of them holding a sequence.
+	 */
+	private static final class Page {
+		final AtomicReferenceArray<BaseSequence> slots = new AtomicReferenceArray<>(PAGE_SIZE);
+		final AtomicInteger used = new AtomicInteger();
+
+		/**
+		 * Count one more sequence in this page.
+		 *
+		 * @return false if the page was freed and a new one has to be used.
+		 */
+		boolean enter() {
+			for (;;) {
+				int count = used.get();
+				if (count == FREED) {
+					return false;
+				}
+				if (used.compareAndSet(count, count + 1)) {
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * Count one sequence less in this page.
+		 *
+		 * @return true if that was the last one and the page is now freed.
+		 */
+		boolean leave() {
+			return used.decrementAndGet() == 0 && used.compareAndSet(0, FREED);
+		}
+	}
+
+	/**
+	 * Create a table where every slot is empty.
+	 *
+	 * @param size the number of slots.
+	 */
+	SlotTable(final int size) {
+		this.pages = new AtomicReferenceArray<>((size + PAGE_MASK) >>> PAGE_BITS);
+	}
+
+	/**
+	 * Get the sequence held in a slot.
+	 *
+	 * @param pos the position of the slot.
+	 * @return the sequence, or null if the slot is empty.
+	 */
+	BaseSequence get(final int pos) {
+		Page page = pages.get(pos >>> PAGE_BITS);
+		return page == null ? null : page.slots.get(pos & PAGE_MASK);
+	}
+
+	/**
+	 * Put a sequence in a slot, allocating its page if needed. Emptying a slot in a page that was
+	 * never allocated allocates nothing, and emptying the last slot in use frees the page.
+	 *
+	 * @param pos the position of the slot.
+	 * @param sequence the sequence, or null to empty the slot.
+	 */
+	void set(final int pos, final BaseSequence sequence) {
+		int index = pos >>> PAGE_BITS;
+		Page page = pages.get(index);
+		if (sequence == null) {
+			if (page != null && page.slots.getAndSet(pos & PAGE_MASK, null) != null && page.leave()) {
+				pages.compareAndSet(index, page, null);
+			}
+			return;
+		}
+		while (page == null || !page.enter()) {
+			// a freed page may still be in the table, take it out before putting a new one in.
+			pages.compareAndSet(index, page, new Page());
+			page = pages.get(index);
+		}
+		if (page.slots.getAndSet(pos & PAGE_MASK, sequence) != null) {
+			// the slot was already counted.
+			page.leave();
+		}
+	}
+
+	/**
+	 * Find the first slot holding a sequence at or after a position. Pages that were never
+	 * allocated are skipped whole.
+	 *
+	 * @param from the position to start at.
+	 * @return the position of the slot, or -1 if every slot from there on is empty.
+	 */
+	int next(final int from) {
+		for (int index = from >>> PAGE_BITS; index < pages.length(); index++) {
+			Page page = pages.get(index);
+			if (page == null) {
+				continue;
+			}
+			for (int i = index == from >>> PAGE_BITS ? from & PAGE_MASK : 0; i < PAGE_SIZE; i++) {
+				if (page.slots.get(i) != null) {
+					return (index << PAGE_BITS) | i;
+				}
+			}
+		}
+		return -1;
+	}
+}
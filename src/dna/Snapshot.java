@@ -0,0 +1,244 @@
+package cisc187.dna;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Saves the fragments of a FragmentList to a binary snapshot file and loads them back.
+ * <p>
+ * A snapshot holds the packed words of every fragment as they are in memory, so loading maps
+ * the file and copies the words in bulk, without parsing a single base. All numbers are little
+ * endian. The file starts with a header:
+ * </p>
+ * <pre>
+ * int  magic      "DNAS"
+ * int  version    1
+ * int  size       the size of the saved list
+ * int  count      the number of records
+ * long checksum   CRC-32 of every byte after the header
+ * </pre>
+ * <p>
+ * followed by one record for every position that holds a fragment, in increasing order:
+ * </p>
+ * <pre>
+ * int    position
+ * int    type     1 for DNA, 2 for RNA
+ * int    length   the number of bases
+ * int    unused   0, so the words are 8 byte aligned
+ * long[] words    the bases, 2 bits each, 32 to a word
+ * </pre>
+ * <p>
+ * A snapshot is written to a temporary file that then replaces the target, so an existing
+ * snapshot is never left half written. A snapshot is checked in full before any fragment of
+ * the list is replaced.
+ * </p>
+ */
+final class Snapshot {
+
+	/**
+	 * The bytes {@code DNAS} read as a little endian int.
+	 */
+	static final int MAGIC = 0x53414E44;
+	static final int VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+	private static final int RECORD_HEADER_SIZE = 16;
+	private static final int DNA = 1;
+	private static final int RNA = 2;
+	private static final int BUFFER_SIZE = 1 << 20;
+	/**
+	 * The most bytes of a snapshot mapped at once.
+	 */
+	private static final long WINDOW_SIZE = 1L << 30;
+
+	/**
+	 * Not an instantiable class
+	 */
+	private Snapshot() {
+	}
+
+	/**
+	 * Save every fragment of a list.
+	 *
+	 * @param list the list to save.
+	 * @param file the snapshot file, replaced if it exists.
+	 * @throws IOException if the file can not be written.
+	 */
+	static void write(final FragmentList list, final Path file) throws IOException {
+		Path dir = file.toAbsolutePath().getParent();
+		Path temp = Files.createTempFile(dir, "." + file.getFileName() + "-", ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				CRC32 checksum = new CRC32();
+				channel.position(HEADER_SIZE);
+				int count = 0;
+				for (int pos = list.nextOccupied(0); pos >= 0; pos = list.nextOccupied(pos + 1)) {
+					BaseSequence seq = list.slot(pos);
+					if (seq.getType() == SequenceType.EMPTY) {
+						continue;
+					}
+					PackedBases bases = seq.packed();
+					Metrics.addBases(bases.length());
+					flushIfFull(channel, buffer, checksum, RECORD_HEADER_SIZE);
+					buffer.putInt(pos);
+					buffer.putInt(seq.getType() == SequenceType.DNA ? DNA : RNA);
+					buffer.putInt(bases.length());
+					buffer.putInt(0);
+					long[] words = bases.words();
+					for (int i = 0, n = PackedBases.wordsFor(bases.length()); i < n; i++) {
+						flushIfFull(channel, buffer, checksum, Long.BYTES);
+						buffer.putLong(words[i]);
+					}
+					count++;
+				}
+				flushIfFull(channel, buffer, checksum, BUFFER_SIZE);
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(MAGIC).putInt(VERSION).putInt(list.getSize()).putInt(count).putLong(checksum.getValue());
+				header.flip();
+				while (header.hasRemaining()) {
+					channel.write(header, header.position());
+				}
+				channel.force(true);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Write out the buffer if it has no room for a number of bytes.
+	 */
+	private static void flushIfFull(final FileChannel channel, final ByteBuffer buffer, final CRC32 checksum, final int needed) throws IOException {
+		if (buffer.remaining() >= needed) {
+			return;
+		}
+		buffer.flip();
+		checksum.update(buffer.array(), 0, buffer.limit());
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Replace every fragment of a list with the fragments of a snapshot. Fragments saved at
+	 * positions the list does not have are left out, with a message. The list is left unchanged
+	 * if the snapshot would take more than its budget.
+	 *
+	 * @param list the list to load into.
+	 * @param file the snapshot file.
+	 * @throws IOException if the file can not be read or is not a valid snapshot.
+	 */
+	static void read(final FragmentList list, final Path file) throws IOException {
+		int[] positions;
+		BaseSequence[] fragments;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_SIZE) {
+				throw corrupt(file);
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw corrupt(file);
+			}
+			header.getInt();
+			int count = header.getInt();
+			long expected = header.getLong();
+			if (count < 0 || count > (size - HEADER_SIZE) / RECORD_HEADER_SIZE) {
+				throw corrupt(file);
+			}
+			positions = new int[count];
+			fragments = new BaseSequence[count];
+			CRC32 checksum = new CRC32();
+			long offset = HEADER_SIZE;
+			MappedByteBuffer window = null;
+			long windowStart = 0;
+			for (int r = 0; r < count; r++) {
+				if (window == null || offset + RECORD_HEADER_SIZE > windowStart + window.limit()) {
+					window = map(channel, offset, size);
+					windowStart = offset;
+				}
+				ByteBuffer record = window.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+				record.position((int) (offset - windowStart));
+				int pos = record.getInt();
+				int type = record.getInt();
+				int length = record.getInt();
+				record.getInt();
+				long recordSize = RECORD_HEADER_SIZE + (long) PackedBases.wordsFor(length) * Long.BYTES;
+				if ((type != DNA && type != RNA) || length < 0 || length > Integer.MAX_VALUE - PackedBases.BASES_PER_WORD
+					|| offset + recordSize > size) {
+					throw corrupt(file);
+				}
+				if (offset + recordSize > windowStart + window.limit()) {
+					window = map(channel, offset, size);
+					windowStart = offset;
+					record = window.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+				}
+				record.limit((int) (offset - windowStart + recordSize));
+				record.position((int) (offset - windowStart));
+				checksum.update(record.duplicate());
+				record.position(record.position() + RECORD_HEADER_SIZE);
+				long[] words = new long[PackedBases.wordsFor(length)];
+				record.asLongBuffer().get(words);
+				positions[r] = pos;
+				fragments[r] = new BaseSequence(new PackedBases(words, length), type == DNA ? SequenceType.DNA : SequenceType.RNA);
+				offset += recordSize;
+			}
+			if (offset != size || checksum.getValue() != expected) {
+				throw corrupt(file);
+			}
+		}
+		list.replaceAll(file.getFileName().toString(), positions, fragments);
+	}
+
+	/**
+	 * Get the checksum a snapshot was saved with, which tells snapshots apart without reading
+	 * them.
+	 *
+	 * @param file the snapshot file.
+	 * @return the checksum in the header of the snapshot, or 0 if there is no snapshot.
+	 * @throws IOException if the file can not be read.
+	 */
+	static long checksum(final Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return 0;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE) {
+				return 0;
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN).getLong(HEADER_SIZE - Long.BYTES);
+		}
+	}
+
+	/**
+	 * Get the size of a snapshot.
+	 *
+	 * @param file the snapshot file.
+	 * @return the size of the file in bytes, or 0 if there is no snapshot.
+	 * @throws IOException if the size can not be read.
+	 */
+	static long size(final Path file) throws IOException {
+		return Files.exists(file) ? Files.size(file) : 0;
+	}
+
+	/**
+	 * Map the part of a snapshot starting at an offset, as much of it as fits in a window.
+	 */
+	private static MappedByteBuffer map(final FileChannel channel, final long offset, final long size) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW_SIZE, size - offset));
+	}
+
+	private static IOException corrupt(final Path file) {
+		return new IOException(file + " is not a valid snapshot.");
+	}
+}
@@ -0,0 +1,75 @@
+package cisc187.dna;
+
+/**
+ * The outcome of checking or making a change, {@link #OK} or the reason it was rejected.
+ * <p>
+ * A rejection is reported to {@link Diagnostics} as a status and a few values, the name of the
+ * command and some numbers, rather than as a message, so rejecting a change builds no text; the
+ * message is only made from the template of the status when a sink writes it out. In a template
+ * {@code {s}} stands for the name, {@code {a}}, {@code {b}} and {@code {c}} for the numbers and
+ * {@code {n}} for a line break.
+ * </p>
+ */
+enum Status {
+	OK(""),
+	INVALID_POSITION("Unable to {s} fragment at position {a}.{n}Position must be between 0 and {b}.{n}"),
+	INVALID_POSITIONS("Unable to {s} fragments at positions {a} to {b}.{n}Positions must be between 0 and {c}.{n}"),
+	INVALID_CHARACTERS("One or more invalid characters in sequence.{n}"),
+	CLIP_START("Unable to clip fragment starting at {a}.{n}Start must be between 0 and {b}.{n}"),
+	CLIP_END("Unable to clip fragment ending at {a}.{n}End must be less than or equal to {b}.{n}"),
+	NOT_DNA("Can only transcribe DNA sequences.{n}"),
+	EMPTY_SEQUENCE("Can only {s} DNA or RNA sequences.{n}"),
+	TYPE_MISMATCH("Unable to swap sequences. Sequences must be of the same type.{n}"),
+	SWAP_START("Unable to clip tails for swapping. starting positions must be smaller than{a} and {b}.{n}"),
+	SWAP_SAME_FRAGMENT("Unable to swap tails within fragment {a}.{n}Positions must be different.{n}"),
+	EMPTY_FRAGMENT("Unable to {s} in an empty fragment.{n}"),
+	EMPTY_PATTERN("Unable to {s} an empty sequence.{n}"),
+	INVALID_REGION("Unable to map {s} from {a}.{n}The region must be inside the file and hold at most {b} bases.{n}"),
+	OVER_BUDGET("Unable to store fragment at position {a}.{n}The budget of {b} bytes would be exceeded.{n}"),
+	LOAD_OVER_BUDGET("Unable to load {s}.{n}Its fragments take {a} bytes, over the budget of {b} bytes.{n}"),
+	SKIPPED("Skipped {a} fragments. {s}{n}");
+
+	private static final String CR = System.lineSeparator();
+
+	private final String template;
+
+	Status(final String template) {
+		this.template = template;
+	}
+
+	/**
+	 * Write the message of this status.
+	 *
+	 * @param out where to write the message.
+	 * @param subject the name standing for {@code {s}}, may be null if the template has none.
+	 * @param a the number standing for {@code {a}}.
+	 * @param b the number standing for {@code {b}}.
+	 * @param c the number standing for {@code {c}}.
+	 */
+	void format(final StringBuilder out, final String subject, final long a, final long b, final long c) {
+		int from = 0;
+		int open;
+		while ((open = template.indexOf('{', from)) >= 0) {
+			out.append(template, from, open);
+			switch (template.charAt(open + 1)) {
+				case 's':
+					out.append(subject);
+					break;
+				case 'a':
+					out.append(a);
+					break;
+				case 'b':
+					out.append(b);
+					break;
+				case 'c':
+					out.append(c);
+					break;
+				default:
+					out.append(CR);
+					break;
+			}
+			from = open + 3;
+		}
+		out.append(template, from, template.length());
+	}
+}
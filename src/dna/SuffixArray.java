@@ -0,0 +1,229 @@
+package cisc187.dna;
+
+import java.util.Arrays;
+
+/**
+ * Builds suffix arrays with SA-IS (Nong, Zhang and Chan, "Linear Suffix Array Construction by
+ * Almost Pure Induced-Sorting", 2009), which sorts the suffixes of a text in linear time.
+ * <p>
+ * The text of the outermost problem is read straight from packed bases, each base being its
+ * code plus one so a sentinel 0 can end the text. Every reduced problem is at most half as long
+ * as the one it came from, so its text and its suffix array are both kept inside the suffix
+ * array of the outer problem, one at each end, and no other int per character is needed.
+ * </p>
+ */
+final class SuffixArray {
+
+	/**
+	 * Not an instantiable class
+	 */
+	private SuffixArray() {
+	}
+
+	/**
+	 * Sort the suffixes of packed bases followed by a sentinel that is smaller than every base.
+	 *
+	 * @param bases the bases.
+	 * @param sa the array to fill, holding one more entry than there are bases. Entry {@code i}
+	 *     becomes the start of the {@code i}th smallest suffix, entry 0 always being the suffix
+	 *     that holds only the sentinel.
+	 */
+	static void build(final PackedBases bases, final int[] sa) {
+		sort(new PackedText(bases), sa, bases.length() + 1, 4);
+	}
+
+	/**
+	 * The characters of a text being sorted.
+	 */
+	private abstract static class Text {
+
+		abstract int at(int i);
+	}
+
+	/**
+	 * Packed bases followed by a sentinel.
+	 */
+	private static final class PackedText extends Text {
+
+		private final long[] words;
+		private final int length;
+
+		PackedText(final PackedBases bases) {
+			this.words = bases.words();
+			this.length = bases.length();
+		}
+
+		@Override
+		int at(final int i) {
+			return i == length ? 0 : PackedBases.code(words, i) + 1;
+		}
+	}
+
+	/**
+	 * A reduced text kept in part of an int array.
+	 */
+	private static final class IntText extends Text {
+
+		private final int[] chars;
+		private final int offset;
+
+		IntText(final int[] chars, final int offset) {
+			this.chars = chars;
+			this.offset = offset;
+		}
+
+		@Override
+		int at(final int i) {
+			return chars[offset + i];
+		}
+	}
+
+	/**
+	 * Sort the suffixes of a text ending with a unique smallest character 0.
+	 *
+	 * @param s the text.
+	 * @param sa the suffix array, only its first n entries are used.
+	 * @param n the length of the text, sentinel included.
+	 * @param k the largest character of the text.
+	 */
+	private static void sort(final Text s, final int[] sa, final int n, final int k) {
+		if (n == 1) {
+			sa[0] = 0;
+			return;
+		}
+		// a set bit marks an S-type suffix, one smaller than the suffix after it.
+		long[] types = new long[(n >>> 6) + 1];
+		setS(types, n - 1);
+		for (int i = n - 3; i >= 0; i--) {
+			int c = s.at(i);
+			int next = s.at(i + 1);
+			if (c < next || (c == next && isS(types, i + 1))) {
+				setS(types, i);
+			}
+		}
+
+		// stage 1: sort the LMS substrings by inducing from their first characters.
+		int[] buckets = new int[k + 1];
+		bucketBounds(s, buckets, n, true);
+		Arrays.fill(sa, 0, n, -1);
+		for (int i = 1; i < n; i++) {
+			if (isLms(types, i)) {
+				sa[--buckets[s.at(i)]] = i;
+			}
+		}
+		induceL(s, types, sa, buckets, n);
+		induceS(s, types, sa, buckets, n);
+
+		// name the sorted LMS substrings, equal substrings getting the same name.
+		int n1 = 0;
+		for (int i = 0; i < n; i++) {
+			if (isLms(types, sa[i])) {
+				sa[n1++] = sa[i];
+			}
+		}
+		Arrays.fill(sa, n1, n, -1);
+		int name = 0;
+		int prev = -1;
+		for (int i = 0; i < n1; i++) {
+			int pos = sa[i];
+			boolean diff = false;
+			for (int d = 0; d < n; d++) {
+				if (prev == -1 || s.at(pos + d) != s.at(prev + d) || isS(types, pos + d) != isS(types, prev + d)) {
+					diff = true;
+					break;
+				} else if (d > 0 && (isLms(types, pos + d) || isLms(types, prev + d))) {
+					break;
+				}
+			}
+			if (diff) {
+				name++;
+				prev = pos;
+			}
+			sa[n1 + pos / 2] = name - 1;
+		}
+		for (int i = n - 1, j = n - 1; i >= n1; i--) {
+			if (sa[i] >= 0) {
+				sa[j--] = sa[i];
+			}
+		}
+
+		// stage 2: sort the reduced text, kept at the end of the array, into its start.
+		int reduced = n - n1;
+		if (name < n1) {
+			sort(new IntText(sa, reduced), sa, n1, name - 1);
+		} else {
+			for (int i = 0; i < n1; i++) {
+				sa[sa[reduced + i]] = i;
+			}
+		}
+
+		// stage 3: induce the order of every suffix from the order of the LMS suffixes.
+		bucketBounds(s, buckets, n, true);
+		for (int i = 1, j = 0; i < n; i++) {
+			if (isLms(types, i)) {
+				sa[reduced + j++] = i;
+			}
+		}
+		for (int i = 0; i < n1; i++) {
+			sa[i] = sa[reduced + sa[i]];
+		}
+		Arrays.fill(sa, n1, n, -1);
+		for (int i = n1 - 1; i >= 0; i--) {
+			int j = sa[i];
+			sa[i] = -1;
+			sa[--buckets[s.at(j)]] = j;
+		}
+		induceL(s, types, sa, buckets, n);
+		induceS(s, types, sa, buckets, n);
+	}
+
+	private static void induceL(final Text s, final long[] types, final int[] sa, final int[] buckets, final int n) {
+		bucketBounds(s, buckets, n, false);
+		for (int i = 0; i < n; i++) {
+			int j = sa[i] - 1;
+			if (j >= 0 && !isS(types, j)) {
+				sa[buckets[s.at(j)]++] = j;
+			}
+		}
+	}
+
+	private static void induceS(final Text s, final long[] types, final int[] sa, final int[] buckets, final int n) {
+		bucketBounds(s, buckets, n, true);
+		for (int i = n - 1; i >= 0; i--) {
+			int j = sa[i] - 1;
+			if (j >= 0 && isS(types, j)) {
+				sa[--buckets[s.at(j)]] = j;
+			}
+		}
+	}
+
+	/**
+	 * Find the start or the end of the bucket of every character.
+	 */
+	private static void bucketBounds(final Text s, final int[] buckets, final int n, final boolean ends) {
+		Arrays.fill(buckets, 0);
+		for (int i = 0; i < n; i++) {
+			buckets[s.at(i)]++;
+		}
+		int sum = 0;
+		for (int c = 0; c < buckets.length; c++) {
+			sum += buckets[c];
+			buckets[c] = ends ? sum : sum - buckets[c];
+		}
+	}
+
+	private static boolean isS(final long[] types, final int i) {
+		return (types[i >>> 6] & (1L << i)) != 0;
+	}
+
+	private static void setS(final long[] types, final int i) {
+		types[i >>> 6] |= 1L << i;
+	}
+
+	/**
+	 * Check if a suffix is leftmost S-type: S-type, after an L-type suffix.
+	 */
+	private static boolean isLms(final long[] types, final int i) {
+		return i > 0 && isS(types, i) && !isS(types, i - 1);
+	}
+}
@@ -0,0 +1,100 @@
+package cisc187.dna;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Translates packed bases into proteins, one letter per amino acid.
+ * <p>
+ * A codon of three 2 bit codes is a 6 bit number, the code of its first base in the highest
+ * bits, so the genetic code is a table of 64 amino acid letters indexed by that number, a stop
+ * codon being {@code *}. T and U share a code, so DNA is read as its coding strand and
+ * translated the same as the RNA it would be transcribed to.
+ * </p>
+ * <p>
+ * All six reading frames are translated in a single pass over the bases: each new base ends a
+ * codon of one forward frame and, read backwards and complemented, a codon of one frame of the
+ * reverse complement. Both codons are kept as rolling 6 bit numbers and looked up once per
+ * base, and the proteins of the reverse frames are filled from their ends.
+ * </p>
+ */
+final class Translation {
+
+	/**
+	 * The number of reading frames: three forward, three on the reverse complement.
+	 */
+	static final int FRAMES = 6;
+	/**
+	 * The amino acid of every codon, the codon's bases being A = 0, C = 1, G = 2, U = 3.
+	 */
+	private static final byte[] CODONS = "KNKNTTTTRSRSIIMIQHQHPPPPRRRRLLLLEDEDAAAAGGGGVVVV*Y*YSSSS*CWCLFLF".getBytes(StandardCharsets.US_ASCII);
+	private static final int CODON_MASK = 63;
+	private static final String[] NAMES = {"+1", "+2", "+3", "-1", "-2", "-3"};
+
+	/**
+	 * Not an instantiable class
+	 */
+	private Translation() {
+	}
+
+	/**
+	 * Get the name of a reading frame.
+	 *
+	 * @param frame the frame, as indexed in {@link #frames(PackedBases)}.
+	 * @return {@code +1} to {@code +3} for the forward frames, {@code -1} to {@code -3} for the
+	 *     reverse ones.
+	 */
+	static String name(final int frame) {
+		return NAMES[frame];
+	}
+
+	/**
+	 * Translate every reading frame of some bases.
+	 *
+	 * @param bases the bases to translate.
+	 * @return the six proteins: frames +1, +2 and +3, starting at the first, second and third
+	 *     base, then frames -1, -2 and -3 of the reverse complement, starting at its first,
+	 *     second and third base. Trailing bases that do not fill a codon are left out.
+	 */
+	static String[] frames(final PackedBases bases) {
+		int length = bases.length();
+		byte[][] proteins = new byte[FRAMES][];
+		for (int f = 0; f < 3; f++) {
+			proteins[f] = new byte[Math.max(0, length - f) / 3];
+			proteins[3 + f] = new byte[proteins[f].length];
+		}
+		long[] words = bases.words();
+		int forward = 0;
+		int reverse = 0;
+		// the frame and index of the next forward codon, and of the reverse codon counted from
+		// the end, kept as counters so no base needs a division.
+		int frame = 0;
+		int index = 0;
+		int back = length - 3;
+		int backFrame = back % 3;
+		int backIndex = back / 3;
+		for (int i = 0; i < length; i++) {
+			int code = (int) (words[i >>> 5] >>> ((i & 31) << 1)) & PackedBases.CODE_MASK;
+			forward = ((forward << 2) | code) & CODON_MASK;
+			// the complement of the base is the first base of the reverse codon.
+			reverse = (reverse >>> 2) | ((PackedBases.CODE_MASK - code) << 4);
+			if (i < 2) {
+				continue;
+			}
+			proteins[frame][index] = CODONS[forward];
+			proteins[3 + backFrame][backIndex] = CODONS[reverse];
+			if (++frame == 3) {
+				frame = 0;
+				index++;
+			}
+			if (--backFrame < 0) {
+				backFrame = 2;
+				backIndex--;
+			}
+		}
+		String[] frames = new String[FRAMES];
+		for (int f = 0; f < FRAMES; f++) {
+			frames[f] = new String(proteins[f], StandardCharsets.US_ASCII);
+		}
+		return frames;
+	}
+}
@@ -0,0 +1,72 @@
+package cisc187.dna;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The named fragment lists of a sequencer, so one process can hold the fragments of many
+ * users or projects instead of running a sequencer for each. Every workspace is a fragment list
+ * of its own, with its own size and budget; they only share the {@link InternPool} if interning
+ * is on.
+ * <p>
+ * Which workspace commands work on is chosen per commands file or per server client, the
+ * registry of names is shared by all of them.
+ * </p>
+ */
+final class Workspaces {
+
+	/**
+	 * The name of the workspace every commands file and client starts in, which can not be
+	 * dropped.
+	 */
+	static final String DEFAULT = "default";
+
+	private final Map<String, FragmentList> lists = new TreeMap<>();
+
+	/**
+	 * Add a workspace.
+	 *
+	 * @param name the name of the workspace.
+	 * @param list the fragments of the workspace.
+	 * @return false if there already is a workspace with that name, which is kept.
+	 */
+	synchronized boolean create(final String name, final FragmentList list) {
+		if (lists.containsKey(name)) {
+			return false;
+		}
+		lists.put(name, list);
+		return true;
+	}
+
+	/**
+	 * Find a workspace.
+	 *
+	 * @param name the name of the workspace.
+	 * @return the fragments of the workspace, or null if there is none with that name.
+	 */
+	synchronized FragmentList get(final String name) {
+		return lists.get(name);
+	}
+
+	/**
+	 * Remove a workspace. Commands already parsed for it still run on its fragments.
+	 *
+	 * @param name the name of the workspace, other than {@link #DEFAULT}.
+	 * @return the fragments of the workspace, or null if there is none with that name.
+	 */
+	synchronized FragmentList drop(final String name) {
+		if (DEFAULT.equals(name)) {
+			return null;
+		}
+		return lists.remove(name);
+	}
+
+	/**
+	 * Get every workspace.
+	 *
+	 * @return a copy of the workspaces by name, in alphabetical order.
+	 */
+	synchronized Map<String, FragmentList> all() {
+		return new TreeMap<>(lists);
+	}
+}
@@ -1,5 +1,6 @@
 package cisc187.util;
 
+import java.io.IOException;
 
 /**
  * Defines actions that can be taken on lists that print their contents.
@@ -18,4 +19,11 @@ public interface Printable {
    */
   void print(final int pos);
 
+  /**
+   * Writes out all items to an output, without building a String of the whole list.
+   * @param out the output to write to.
+   * @throws IOException if the output can not be written.
+   */
+  void print(final Appendable out) throws IOException;
+
 }
@@ -1,5 +1,6 @@
 package cisc187.dna;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 import java.io.ByteArrayOutputStream;
@@ -74,6 +75,16 @@ public class TestBaseSequence {
     assertEquals("Failed to detect invalid DNA sequence.", "One or more invalid characters in sequence."+ CR, stdout.toString());
   }
 
+  @Test
+  public void initAcrossWords() {
+    String bases = "acgtACGTacgtACGTacgtACGTacgtACGTacgtACGTac";
+    dna = new BaseSequence(bases, SequenceType.DNA);
+    assertEquals("Failed to pack a lower case sequence longer than a word.", "[DNA: " + bases.toUpperCase() + "]", dna.toString());
+    dna = new BaseSequence(bases.substring(0, 40) + "u" + bases.substring(41), SequenceType.DNA);
+    assertEquals("Failed to detect an invalid base in a later word.", SequenceType.EMPTY, dna.getType());
+    assertEquals("Failed to report an invalid base in a later word.", "One or more invalid characters in sequence." + CR, stdout.toString());
+  }
+
   @Test
   public void initEmptyRNASeq() {
     List<Character> c = new ArrayList<>();
@@ -111,6 +122,18 @@ public class TestBaseSequence {
     BaseSequence dna2 = dna.copy();
     assertFalse("Copy of a DNA sequence is actually the same object.", dna2 == dna);
   }
+  @Test
+  public void copyDNAisIndependent() {
+    dna = new BaseSequence("ACGTACGT", SequenceType.DNA);
+    BaseSequence dna2 = dna.copy();
+    dna.clip(2, 5);
+    dna2.transcribe();
+    BaseSequence dna3 = dna.copy();
+    dna3.append(dna);
+    assertEquals("Failed to keep the original after editing a copy.", "[DNA: ACGT]", dna.toString());
+    assertEquals("Failed to keep the copy after editing the original.", "[RNA: ACGUACGU]", dna2.toString());
+    assertEquals("Failed to edit a copy of a copy.", "[DNA: ACGTACGT]", dna3.toString());
+  }
 
   /////////////////////////////////////////////////////////////////////////
   //  API tests: transcribe
@@ -130,6 +153,19 @@ public class TestBaseSequence {
     assertEquals("Failed to transcribe DNA sequence.", "[RNA: ]", dna.toString());
   }
 
+  @Test
+  public void transcribeAcrossWords() {
+    StringBuilder seq = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 70; i++) {
+      seq.append("AACGT".charAt(i % 5));
+      expected.insert(0, "UUGCA".charAt(i % 5));
+    }
+    dna = new BaseSequence(seq.toString(), SequenceType.DNA);
+    dna.transcribe();
+    assertEquals("Failed to transcribe a DNA sequence longer than one word.", "[RNA: " + expected + "]", dna.toString());
+  }
+
   @Test
   public void transcribeRNA() {
     dna = new BaseSequence("AAAAAAA", SequenceType.RNA);
@@ -137,6 +173,48 @@ public class TestBaseSequence {
     assertEquals("Failed to show RNA transcription error.", "Can only transcribe DNA sequences."+ CR, stdout.toString());
   }
 
+  /////////////////////////////////////////////////////////////////////////
+  //  API tests: equals and hashCode
+  /////////////////////////////////////////////////////////////////////////
+
+  @Test
+  public void hashAfterEdits() {
+    StringBuilder seq = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      seq.append("ACGTTGCA".charAt((i * 7) % 8));
+    }
+    dna = new BaseSequence(seq.toString(), SequenceType.DNA);
+    BaseSequence tail = dna.clip(1500);
+    dna.clip(10, 1200);
+    dna.append(tail);
+    String edited = seq.substring(0, 10) + seq.substring(1201);
+    BaseSequence fresh = new BaseSequence(edited, SequenceType.DNA);
+    assertEquals("Failed to compare an edited sequence.", fresh, dna);
+    assertEquals("Failed to hash an edited sequence.", fresh.hashCode(), dna.hashCode());
+    fresh.clip(0, fresh.length() - 2);
+    assertFalse("Failed to tell apart sequences that differ in one base.", fresh.equals(dna));
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  //  API tests: reverse complement and translate
+  /////////////////////////////////////////////////////////////////////////
+
+  @Test
+  public void reverseComplementRNA() {
+    dna = new BaseSequence("AUGGCCUAAC", SequenceType.RNA);
+    dna.reverseComplement();
+    assertEquals("Failed to reverse complement an RNA sequence.", "[RNA: GUUAGGCCAU]", dna.toString());
+  }
+
+  @Test
+  public void translateSixFrames() {
+    dna = new BaseSequence("AUGGCCUAA", SequenceType.RNA);
+    String[] expected = {"MA*", "WP", "GL", "LGH", "*A", "RP"};
+    assertEquals("Failed to translate all six frames.", Arrays.asList(expected), Arrays.asList(dna.translate()));
+    dna = new BaseSequence("ATGGCCTAA", SequenceType.DNA);
+    assertEquals("Failed to translate DNA as its coding strand.", Arrays.asList(expected), Arrays.asList(dna.translate()));
+  }
+
 
   /////////////////////////////////////////////////////////////////////////
   //  API tests: clip
@@ -179,4 +257,31 @@ public class TestBaseSequence {
 
 
 
+  /////////////////////////////////////////////////////////////////////////
+  //  API tests: packed accessors
+  /////////////////////////////////////////////////////////////////////////
+
+  @Test
+  public void lengthAndBaseAt() {
+    dna = new BaseSequence("acgtTGCA", SequenceType.DNA);
+    assertEquals("Failed to get the length of a DNA sequence.", 8, dna.length());
+    assertEquals("Failed to get the first base of a DNA sequence.", 'A', dna.baseAt(0));
+    assertEquals("Failed to get the last base of a DNA sequence.", 'A', dna.baseAt(7));
+    assertEquals("Failed to get a middle base of a DNA sequence.", 'T', dna.baseAt(4));
+  }
+
+  @Test
+  public void clipAcrossWords() {
+    StringBuilder seq = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      seq.append("ACGU".charAt(i % 4));
+    }
+    dna = new BaseSequence(seq.toString(), SequenceType.RNA);
+    BaseSequence clipped = dna.clip(30, 69);
+    assertEquals("Failed to clip a sequence longer than one word.", 60, dna.length());
+    assertEquals("Failed to return clipped data longer than one word.", 40, clipped.length());
+    assertEquals("Failed to keep the bases after the clip.", seq.substring(0, 30) + seq.substring(70), 
+        dna.toString().substring(6, 66));
+  }
+
 }
@@ -1,11 +1,24 @@
 package cisc187.dna;
 
 import java.util.*;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -103,6 +116,25 @@ public class TestFragmentList {
         assertEquals("Failed to display suitable print error", "Unable to print fragment at position -1." + CR + "Position must be between 0 and 4." + CR, stdout.toString());
     }
 
+    @Test
+    public void testPrintToAppendable() throws IOException {
+        StringBuilder out = new StringBuilder();
+        frag.print(out);
+        assertEquals("Failed to print fragment list to an Appendable.", "[DNA: AAAA][RNA: CCCC][DNA: GGGG][RNA: UUUU][DNA: TTTT]", out.toString());
+        assertEquals("Failed to leave the console untouched.", "", stdout.toString());
+    }
+
+    @Test
+    public void testPrintLongFragment() {
+        StringBuilder seq = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            seq.append("GATTACA".charAt(i % 7));
+        }
+        frag.insert(2, SequenceType.DNA, seq.toString());
+        frag.print(2);
+        assertEquals("Failed to print a fragment longer than one chunk.", "[DNA: " + seq + "]" + CR, stdout.toString());
+    }
+
   /////////////////////////////////////////////////////////////////////////
     //  insert API tests
     /////////////////////////////////////////////////////////////////////////
@@ -280,6 +312,13 @@ public class TestFragmentList {
         assertEquals("Failed to copy fragment position 0 to pos 1.", "[DNA: AAAA]" + CR, stdout.toString());
     }
 
+    @Test
+    public void copyOutOfRange() {
+        frag.copy(0, SIZE);
+        assertEquals("Failed to reject copying past the end of the list.", "Unable to copy fragment at position "
+            + SIZE + "." + CR + "Position must be between 0 and " + (SIZE - 1) + "." + CR, stdout.toString());
+    }
+
   /////////////////////////////////////////////////////////////////////////
     //  swap API tests
     /////////////////////////////////////////////////////////////////////////
@@ -294,4 +333,639 @@ public class TestFragmentList {
         assertEquals("Failed to swap C's and T's .", new BaseSequence("GGGGCCCC", SequenceType.DNA), one);
     }
 
+    @Test
+    public void swapWithinOneFragmentIsRejected() throws IOException {
+        frag.insert(0, SequenceType.DNA, "AACCGGTT");
+        Path dir = Files.createTempDirectory("journal");
+        Path prefix = dir.resolve("fragments");
+        try {
+            Path file = dir.resolve("fragments.journal");
+            Journal.open(prefix, frag).close();
+            long size = Files.size(file);
+            Journal journal = Journal.open(prefix, frag);
+            frag.swap(0, 6, 0, 2);
+            journal.close();
+            assertEquals("Failed to leave the fragment unchanged.", new BaseSequence("AACCGGTT", SequenceType.DNA), frag.sequenceAt(0));
+            assertEquals("Failed to leave a rejected swap out of the journal.", size, Files.size(file));
+        } finally {
+            for (Path file : Files.newDirectoryStream(dir)) {
+                Files.delete(file);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void swapLongTails() {
+        StringBuilder a = new StringBuilder();
+        StringBuilder c = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            a.append('A');
+            c.append('C');
+        }
+        frag.insert(0, SequenceType.DNA, a.toString());
+        frag.insert(1, SequenceType.DNA, c.toString());
+        for (int i = 0; i < 100; i++) {
+            frag.swap(0, 1000 + i, 1, 3000 - i);
+        }
+        BaseSequence zero = frag.sequenceAt(0);
+        BaseSequence one = frag.sequenceAt(1);
+        int adenine = 0;
+        for (int i = 0; i < zero.length(); i++) {
+            adenine += zero.baseAt(i) == 'A' ? 1 : 0;
+        }
+        for (int i = 0; i < one.length(); i++) {
+            adenine += one.baseAt(i) == 'A' ? 1 : 0;
+        }
+        assertEquals("Failed to keep the total length over many swaps.", 10000, zero.length() + one.length());
+        assertEquals("Failed to keep every base over many swaps.", 5000, adenine);
+        assertEquals("Failed to keep the head of a fragment over many swaps.", 'A', zero.baseAt(999));
+    }
+
+    @Test
+    public void sparseSlots() {
+        frag = new FragmentList(10000000);
+        frag.insert(9999999, SequenceType.DNA, "ACGT");
+        frag.insert(5000000, SequenceType.DNA, "CCCC");
+        frag.swap(9999999, 2, 5000000, 2);
+        frag.remove(5000000);
+        frag.print(9999999);
+        frag.print(5000000);
+        frag.print(0);
+        assertEquals("Failed to edit far apart fragments.", "[DNA: ACCC]" + CR + "[]" + CR + "[]" + CR, stdout.toString());
+    }
+
+  /////////////////////////////////////////////////////////////////////////
+    //  find API tests
+    /////////////////////////////////////////////////////////////////////////
+    @Test
+    public void findAfterEdits() {
+        frag.insert(0, SequenceType.DNA, "ACGTACGTACGTACGTAAA");
+        frag.insert(2, SequenceType.DNA, "TTACGTACGTACGTACGT");
+        frag.find(SequenceType.DNA, "acgtacgtacgt");
+        frag.find(SequenceType.DNA, "TTA");
+        frag.clip(0, 0, 3);
+        frag.transcribe(2);
+        frag.find(SequenceType.DNA, "ACGTACGTACGT");
+        frag.find(SequenceType.RNA, "ACGUACGUACGU");
+        frag.find(SequenceType.RNA, "GGG");
+        assertEquals("Failed to find sequences.", "[DNA: ACGTACGTACGT] found at 0:0, 0:4, 2:2, 2:6" + CR
+            + "[DNA: TTA] found at 2:0" + CR
+            + "[DNA: ACGTACGTACGT] found at 0:0" + CR
+            + "[RNA: ACGUACGUACGU] found at 2:0, 2:4" + CR
+            + "[RNA: GGG] not found." + CR, stdout.toString());
+    }
+
+    @Test
+    public void findAfterEditsInLongFragment() {
+        StringBuilder seq = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            seq.append("ACGTTGCA".charAt((i * 3) % 8));
+        }
+        seq.replace(2500, 2512, "GGGGCCCCGGGG");
+        frag.insert(0, SequenceType.DNA, seq.toString());
+        frag.find(SequenceType.DNA, "GGGGCCCCGGGG");
+        frag.clip(0, 100, 1099);
+        frag.insert(1, SequenceType.DNA, "GGGGCCCCGGGG");
+        frag.swap(1, 4, 0, 10);
+        frag.find(SequenceType.DNA, "GGGGCCCCGGGG");
+        frag.find(SequenceType.DNA, "CCCCGGGG");
+        assertEquals("Failed to find sequences after edits.", "[DNA: GGGGCCCCGGGG] found at 0:2500" + CR
+            + "[DNA: GGGGCCCCGGGG] found at 1:1494" + CR
+            + "[DNA: CCCCGGGG] found at 0:10, 1:1498" + CR, stdout.toString());
+    }
+
+    @Test
+    public void countAndLocateAfterEdits() {
+        frag.insert(2, SequenceType.DNA, "ACGTACGTACGTACGTAAA");
+        frag.count(2, "acgt");
+        frag.locate(2, "CGTA");
+        frag.clip(2, 0, 3);
+        frag.count(2, "ACGT");
+        frag.locate(2, "GGG");
+        frag.count(2, "ACGU");
+        frag.remove(1);
+        frag.count(1, "A");
+        assertEquals("Failed to count and locate sequences.", "[DNA: ACGT] found 4 times in fragment 2." + CR
+            + "[DNA: CGTA] found at 2:1, 2:5, 2:9, 2:13" + CR
+            + "[DNA: ACGT] found 3 times in fragment 2." + CR
+            + "[DNA: GGG] not found." + CR
+            + "One or more invalid characters in sequence." + CR
+            + "Unable to count in an empty fragment." + CR, stdout.toString());
+    }
+
+  /////////////////////////////////////////////////////////////////////////
+    //  snapshot tests
+    /////////////////////////////////////////////////////////////////////////
+    @Test
+    public void saveAndLoad() throws IOException {
+        Path file = Files.createTempFile("fragments", ".snap");
+        try {
+            StringBuilder longer = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                longer.append("ACGTT");
+            }
+            frag.insert(2, SequenceType.DNA, longer.toString());
+            frag.remove(3);
+            frag.save(file);
+            String saved = frag.toString();
+            frag.insert(3, SequenceType.DNA, "CCC");
+            frag.remove(0);
+            frag.load(file);
+            assertEquals("Failed to load the saved fragments.", saved, frag.toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void loadCorruptSnapshot() throws IOException {
+        Path file = Files.createTempFile("fragments", ".snap");
+        try {
+            frag.save(file);
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[bytes.length - 1] ^= 1;
+            Files.write(file, bytes);
+            frag.remove(0);
+            String before = frag.toString();
+            try {
+                frag.load(file);
+                fail("Failed to detect a corrupt snapshot.");
+            } catch (IOException e) {
+                assertEquals("Failed to leave the fragments unchanged.", before, frag.toString());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void loadOverBudget() throws IOException {
+        Path file = Files.createTempFile("fragments", ".snap");
+        try {
+            frag.insert(0, SequenceType.DNA, "ACGTACGTACGTACGTACGTACGTACGTACGTA");
+            frag.save(file);
+            frag.insert(0, SequenceType.DNA, "C");
+            String before = frag.toString();
+            stdout.reset();
+            frag.setBudget(40);
+            frag.load(file);
+            assertEquals("Failed to reject a snapshot over budget.", "Unable to load " + file.getFileName() + "." + CR
+                + "Its fragments take 48 bytes, over the budget of 40 bytes." + CR, stdout.toString());
+            assertEquals("Failed to leave the fragments unchanged.", before, frag.toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void loadCheckpointsJournal() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        Path prefix = dir.resolve("fragments");
+        Path file = dir.resolve("saved.snap");
+        try {
+            frag.insert(0, SequenceType.DNA, "ACGTACGT");
+            frag.save(file);
+            String saved = frag.toString();
+            FragmentList loaded = new FragmentList(SIZE);
+            Journal journal = Journal.open(prefix, loaded);
+            long empty = Files.size(dir.resolve("fragments.journal"));
+            loaded.load(file);
+            journal.close();
+            assertEquals("Failed to load without journaling every fragment.", empty, Files.size(dir.resolve("fragments.journal")));
+            FragmentList recovered = new FragmentList(SIZE);
+            Journal.open(prefix, recovered).close();
+            assertEquals("Failed to recover the loaded fragments.", saved, recovered.toString());
+        } finally {
+            for (Path f : Files.newDirectoryStream(dir)) {
+                Files.delete(f);
+            }
+            Files.delete(dir);
+        }
+    }
+
+  /////////////////////////////////////////////////////////////////////////
+    //  intern pool tests
+    /////////////////////////////////////////////////////////////////////////
+    @Test
+    public void internEqualFragments() {
+        InternPool pool = new InternPool(0);
+        FragmentList other = new FragmentList(SIZE);
+        frag.useInternPool(pool);
+        other.useInternPool(pool);
+        frag.insert(0, SequenceType.DNA, "ACGTACGT");
+        frag.insert(1, SequenceType.DNA, "ACGTACGT");
+        frag.copy(0, 2);
+        other.insert(4, SequenceType.DNA, "ACGTACGT");
+        BaseRope shared = frag.slot(0).rope();
+        assertTrue("Failed to share equal fragments.", shared == frag.slot(1).rope()
+            && shared == frag.slot(2).rope() && shared == other.slot(4).rope());
+        assertEquals("Failed to count the slots holding a fragment.", 4, pool.holders(shared));
+        frag.remove(0);
+        frag.clip(1, 0, 3);
+        assertEquals("Failed to release replaced fragments.", 2, pool.holders(shared));
+        frag.remove(2);
+        other.remove(4);
+        assertEquals("Failed to evict a fragment no slot holds.", 0, pool.holders(shared));
+    }
+
+    @Test
+    public void internEditedFragments() {
+        InternPool pool = new InternPool(0);
+        StringBuilder seq = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            seq.append("ACGTTGCA".charAt((i * 5) % 8));
+        }
+        BaseSequence edited = new BaseSequence(seq.toString(), SequenceType.DNA);
+        BaseSequence tail = edited.clip(1700);
+        edited.clip(3, 1033);
+        edited.append(tail);
+        String kept = seq.substring(0, 3) + seq.substring(1034);
+        BaseRope pooled = pool.intern(new BaseSequence(kept, SequenceType.DNA).rope());
+        assertTrue("Failed to share fragments split into different leaves.", pooled == pool.intern(edited.rope()));
+        String changed = kept.substring(0, 2000) + (kept.charAt(2000) == 'A' ? 'C' : 'A') + kept.substring(2001);
+        BaseRope other = new BaseSequence(changed, SequenceType.DNA).rope();
+        assertTrue("Failed to keep apart fragments differing in one base.", other == pool.intern(other));
+        assertEquals("Failed to count the pooled fragments.", 2, pool.size());
+    }
+
+  /////////////////////////////////////////////////////////////////////////
+    //  bulk edit tests
+    /////////////////////////////////////////////////////////////////////////
+    @Test
+    public void bulkEdits() {
+        int[] all = {0, 1, 2, 3, 4};
+        frag.insertBatch(new int[] {1, 3}, SequenceType.DNA, "AACGTT");
+        frag.transcribeAll(new int[] {0, 1, 2});
+        frag.reverseComplementAll(new int[] {2, 3});
+        frag.clipRange(all, 1, 2);
+        frag.clipRange(all, 3);
+        frag.print();
+        assertEquals("Failed to edit many positions at once.", "Skipped 3 fragments. The start of the clip must be inside the fragment."
+            + CR + "[RNA: UU][RNA: AGU][RNA: GG][DNA: AGT][DNA: TT]" + CR, stdout.toString());
+    }
+
+    @Test
+    public void bulkEditOutOfRange() {
+        frag.removeAll(new int[] {0, 5});
+        frag.print();
+        assertEquals("Failed to reject an invalid position once.", "Unable to remove fragments at positions 0 to 5." + CR
+            + "Positions must be between 0 and 4." + CR + "[DNA: AAAA][RNA: CCCC][DNA: GGGG][RNA: UUUU][DNA: TTTT]" + CR, stdout.toString());
+    }
+
+  /////////////////////////////////////////////////////////////////////////
+    //  budget tests
+    /////////////////////////////////////////////////////////////////////////
+    @Test
+    public void budgetRejectsGrowth() {
+        String longDna = "ACGTACGTACGTACGTACGTACGTACGTACGTA";
+        assertEquals("Failed to count packed bytes.", 40, frag.getBytes());
+        frag.setBudget(48);
+        frag.insert(0, SequenceType.DNA, longDna);
+        frag.copy(0, 1);
+        assertEquals("Failed to reject a copy over budget.", "Unable to store fragment at position 1." + CR
+            + "The budget of 48 bytes would be exceeded." + CR, stdout.toString());
+        assertEquals("Failed to leave a rejected position unchanged.", "[RNA: CCCC]", frag.slot(1).toString());
+        frag.remove(2);
+        frag.copy(0, 1);
+        assertEquals("Failed to count bytes after edits.", 48, frag.getBytes());
+        assertEquals("Failed to copy within budget.", "[DNA: " + longDna + "]", frag.slot(1).toString());
+    }
+
+    @Test
+    public void budgetRejectsSwapGrowth() {
+        String as = "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA";
+        String cs = "CCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCC";
+        frag.insert(0, SequenceType.DNA, as);
+        frag.insert(1, SequenceType.DNA, cs);
+        frag.setBudget(40);
+        // 63 bases and 1 take a word more than 32 and 32.
+        frag.swap(0, 31, 1, 0);
+        assertEquals("Failed to reject a swap over budget.", "Unable to store fragment at position 0." + CR
+            + "The budget of 40 bytes would be exceeded." + CR, stdout.toString());
+        assertEquals("Failed to leave a rejected swap unchanged.", "[DNA: " + as + "]", frag.slot(0).toString());
+        frag.setBudget(48);
+        frag.swap(0, 31, 1, 0);
+        assertEquals("Failed to count bytes after a swap.", 48, frag.getBytes());
+        assertEquals("Failed to swap within budget.", "[DNA: " + as.substring(1) + cs + "]", frag.slot(0).toString());
+    }
+
+  /////////////////////////////////////////////////////////////////////////
+    //  journal tests
+    /////////////////////////////////////////////////////////////////////////
+    @Test
+    public void recoverFromJournal() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        Path prefix = dir.resolve("fragments");
+        try {
+            Journal journal = Journal.open(prefix, frag);
+            frag.insert(0, SequenceType.DNA, "AACCGGTT");
+            frag.clip(1, 2);
+            journal.checkpoint();
+            frag.swap(0, 4, 2, 1);
+            frag.copy(0, 4);
+            String beforeLast = frag.toString();
+            frag.transcribe(2);
+            journal.close();
+            String saved = frag.toString();
+
+            FragmentList recovered = new FragmentList(SIZE);
+            Journal.open(prefix, recovered).close();
+            assertEquals("Failed to recover the journaled fragments.", saved, recovered.toString());
+
+            // a record torn by a crash is dropped, the ones before it are kept.
+            Path file = dir.resolve("fragments.journal");
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(bytes, bytes.length - 2));
+            recovered = new FragmentList(SIZE);
+            Journal.open(prefix, recovered).close();
+            assertEquals("Failed to drop a torn record.", beforeLast, recovered.toString());
+        } finally {
+            for (Path file : Files.newDirectoryStream(dir)) {
+                Files.delete(file);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void mapIsJournaledByRegion() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        Path prefix = dir.resolve("fragments");
+        Path file = dir.resolve("reference.seq");
+        try {
+            StringBuilder bases = new StringBuilder();
+            for (int i = 0; i < 100000; i++) {
+                bases.append("ACGTTGCA".charAt((i * 3) % 8));
+            }
+            Files.write(file, ("tt" + bases + "\n").getBytes());
+            FragmentList mapped = new FragmentList(SIZE);
+            Journal journal = Journal.open(prefix, mapped);
+            mapped.map(1, SequenceType.DNA, file, 2, -1);
+            mapped.clip(1, 10, 99989);
+            journal.close();
+            String saved = mapped.toString();
+            assertTrue("Failed to journal the mapped region instead of its bases.",
+                Files.size(dir.resolve("fragments.journal")) < 1024);
+            FragmentList recovered = new FragmentList(SIZE);
+            Journal.open(prefix, recovered).close();
+            assertEquals("Failed to recover a mapped fragment.", saved, recovered.toString());
+        } finally {
+            for (Path f : Files.newDirectoryStream(dir)) {
+                Files.delete(f);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void rejectedClipIsNotJournaled() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        Path prefix = dir.resolve("fragments");
+        try {
+            Path file = dir.resolve("fragments.journal");
+            Journal.open(prefix, frag).close();
+            long size = Files.size(file);
+            Journal journal = Journal.open(prefix, frag);
+            frag.clip(0, 4, 1);
+            frag.clip(0, 2, 9);
+            frag.clip(0, 9);
+            journal.close();
+            assertEquals("Failed to leave rejected clips out of the journal.", size, Files.size(file));
+        } finally {
+            for (Path file : Files.newDirectoryStream(dir)) {
+                Files.delete(file);
+            }
+            Files.delete(dir);
+        }
+    }
+
+  /////////////////////////////////////////////////////////////////////////
+    //  concurrent fragment list tests
+    /////////////////////////////////////////////////////////////////////////
+    @Test
+    public void concurrentSwaps() throws InterruptedException {
+        final FragmentList shared = new ConcurrentFragmentList(4);
+        StringBuilder a = new StringBuilder();
+        for (int i = 0; i < 4000; i++) {
+            a.append('A');
+        }
+        for (int i = 0; i < 4; i++) {
+            shared.insert(i, SequenceType.DNA, a.toString());
+        }
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int from = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 500; i++) {
+                        shared.swap(from, 1000 + i, (from + 1 + i) % 4, 1000);
+                        shared.print(from);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        int total = 0;
+        for (int i = 0; i < 4; i++) {
+            total += shared.sequenceAt(i).length();
+        }
+        assertEquals("Failed to keep every base over concurrent swaps.", 16000, total);
+    }
+
+    @Test
+    public void concurrentInsertsAndRemovesInOnePage() throws InterruptedException {
+        final FragmentList shared = new ConcurrentFragmentList(8);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int pos = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 2000; i++) {
+                        shared.insert(pos, SequenceType.DNA, "ACGT");
+                        shared.insert(pos + 4, SequenceType.DNA, "ACGT");
+                        shared.remove(pos);
+                        shared.remove(pos + 4);
+                    }
+                    shared.insert(pos, SequenceType.DNA, "ACGT");
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < 4; i++) {
+            assertEquals("Failed to keep a fragment stored while its page was emptied.", new BaseSequence("ACGT", SequenceType.DNA), shared.sequenceAt(i));
+            assertEquals("Failed to remove a fragment while its page was emptied.", 0, shared.sequenceAt(i + 4).length());
+        }
+    }
+
+  /////////////////////////////////////////////////////////////////////////
+    //  parallel batch and server tests
+    /////////////////////////////////////////////////////////////////////////
+    private void submitEdits(final FragmentList list, final BatchExecutor batch) {
+        for (int i = 0; i < 200; i++) {
+            final int pos = i % SIZE;
+            StringBuilder bases = new StringBuilder();
+            for (int j = 0; j < (i * 37) % 500 + 1; j++) {
+                bases.append("ACGT".charAt((i + j) % 4));
+            }
+            final String sequence = bases.toString();
+            Operation operation;
+            if (i % 50 == 49) {
+                operation = Operation.onAll(new Runnable() {
+                    @Override
+                    public void run() {
+                        list.print();
+                    }
+                });
+            } else {
+                operation = new Operation(new Runnable() {
+                    @Override
+                    public void run() {
+                        list.insert(pos, SequenceType.DNA, sequence);
+                        list.clip(pos, 0, sequence.length() / 2);
+                        list.print(pos);
+                    }
+                }, pos);
+            }
+            if (batch == null) {
+                operation.run();
+            } else {
+                batch.submit(operation);
+            }
+        }
+        if (batch != null) {
+            batch.flush();
+        }
+    }
+
+    @Test
+    public void parallelOutputInOrder() {
+        submitEdits(new FragmentList(SIZE), null);
+        String expected = stdout.toString();
+        stdout.reset();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            submitEdits(new ConcurrentFragmentList(SIZE), new BatchExecutor(pool, 64));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals("Failed to write parallel output in submission order.", expected, stdout.toString());
+    }
+
+    @Test
+    public void serverRoundTrip() throws IOException {
+        final SequencerServer server = new SequencerServer(0, null);
+        Thread serving = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.serve();
+                } catch (IOException e) {
+                    // the test fails on the client side.
+                }
+            }
+        });
+        serving.setDaemon(true);
+        serving.start();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1);
+            // both batches are sent before the first answer is read.
+            out.write("workspace create served 4\nworkspace use served\ninsert 0 dna ACGT\nprint 0\n.\n"
+                + "copy 0 1\nbogus 1\nprint\nworkspace drop served\n.\n");
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            StringBuilder answers = new StringBuilder();
+            int ends = 0;
+            String line;
+            while (ends < 2 && (line = in.readLine()) != null) {
+                answers.append(line).append('\n');
+                if (line.equals(SequencerServer.END)) {
+                    ends++;
+                }
+            }
+            assertEquals("Failed to answer the batches in order.", "[DNA: ACGT]\n.\n"
+                + "Invalid command.\n[DNA: ACGT][DNA: ACGT][][]\n.\n", answers.toString());
+        } finally {
+            server.close();
+        }
+    }
+
+  /////////////////////////////////////////////////////////////////////////
+    //  FASTA / FASTQ import tests
+    /////////////////////////////////////////////////////////////////////////
+    private FastaReader reader(final String text, final SequenceType type) {
+        return new FastaReader(new ByteArrayInputStream(text.getBytes()), type);
+    }
+
+    @Test
+    public void importFasta() throws IOException {
+        int read = frag.insert(1, reader(">one\nacgt\nAC\n\n>two description\r\nGGTT\r\n", SequenceType.DNA));
+        frag.print();
+        assertEquals("Failed to count imported records.", 2, read);
+        assertEquals("Failed to import FASTA records.", "[DNA: AAAA][DNA: ACGTAC][DNA: GGTT][RNA: UUUU][DNA: TTTT]" + CR, stdout.toString());
+    }
+
+    @Test
+    public void importFastq() throws IOException {
+        frag.insert(3, reader("@r1\nACGU\n+\n@@@+\n@r2\nAA\nCC\n+r2\nII\nII\n", SequenceType.RNA));
+        frag.print();
+        assertEquals("Failed to import FASTQ records.", "[DNA: AAAA][RNA: CCCC][DNA: GGGG][RNA: ACGU][RNA: AACC]" + CR, stdout.toString());
+    }
+
+    @Test
+    public void importInvalidRecord() throws IOException {
+        int read = frag.insert(3, reader(">bad\nACGN\n>good\nCCC\n>extra\nA\n", SequenceType.DNA));
+        frag.print();
+        assertEquals("Failed to stop importing at the end of the list.", 2, read);
+        assertEquals("Failed to skip invalid FASTA record.", "One or more invalid characters in sequence." + CR 
+            + "[DNA: AAAA][RNA: CCCC][DNA: GGGG][RNA: UUUU][DNA: CCC]" + CR, stdout.toString());
+        stdout.reset();
+        read = frag.insert(3, reader("@bad\nNAAA\n+\nII\nII\n@good\nGGA\n+\nIII\n", SequenceType.DNA));
+        frag.print();
+        assertEquals("Failed to read the record after an invalid FASTQ record.", 2, read);
+        assertEquals("Failed to skip the wrapped quality of an invalid FASTQ record.", "One or more invalid characters in sequence." + CR
+            + "[DNA: AAAA][RNA: CCCC][DNA: GGGG][RNA: UUUU][DNA: GGA]" + CR, stdout.toString());
+    }
+
+  /////////////////////////////////////////////////////////////////////////
+    //  memory mapped fragment tests
+    /////////////////////////////////////////////////////////////////////////
+    @Test
+    public void mapRegion() throws IOException {
+        Path file = Files.createTempFile("fragment", ".seq");
+        try {
+            Files.write(file, "ttttAACCGGTTtttt\n".getBytes());
+            frag.map(0, SequenceType.DNA, file, 4, 8);
+            frag.map(1, SequenceType.DNA, file, 0, -1);
+            frag.clip(0, 2, 3);
+            frag.transcribe(1);
+            frag.print();
+            assertEquals("Failed to edit mapped fragments.", "[DNA: AAGGTT][RNA: AAAAAACCGGUUAAAA][DNA: GGGG][RNA: UUUU][DNA: TTTT]" + CR, stdout.toString());
+            assertEquals("Failed to leave the mapped file unchanged.", "ttttAACCGGTTtttt\n", new String(Files.readAllBytes(file)));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void mapInvalidRegion() throws IOException {
+        Path file = Files.createTempFile("fragment", ".seq");
+        try {
+            Files.write(file, "ACGU".getBytes());
+            frag.map(0, SequenceType.DNA, file, 0, -1);
+            frag.print(0);
+            assertEquals("Failed to detect invalid mapped fragment.", "One or more invalid characters in sequence." + CR + "[DNA: AAAA]" + CR, stdout.toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
 }